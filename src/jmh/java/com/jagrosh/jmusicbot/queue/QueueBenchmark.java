@@ -0,0 +1,165 @@
+package com.jagrosh.jmusicbot.queue;
+
+import com.jagrosh.jmusicbot.settings.QueueType;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Times the queue operations for each queue type, queue length and number of
+ * owners. Operations that keep the length of the queue (moveItem, shuffle) run
+ * on one filled queue; add, addAt and pull are each paired with the opposite
+ * change so the queue stays at its length; removeAll and skip run on a fresh
+ * copy of the filled queue every time, which is not timed.
+ *
+ * Run with {@code mvn -Pbenchmark test-compile exec:exec}, and pass JMH options
+ * through {@code -Djmh.args="..."}, for example {@code -Djmh.args="-p size=1000 add"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueueBenchmark
+{
+    @State(Scope.Thread)
+    public static class Filled
+    {
+        @Param({"LINEAR", "FAIR", "FAIR_TIME"})
+        public String type;
+
+        @Param({"10", "1000", "100000"})
+        public int size;
+
+        @Param({"1", "50", "500"})
+        public int owners;
+
+        private AbstractQueue<Entry> queue;
+        private SplittableRandom random;
+
+        @Setup(Level.Trial)
+        public void fill()
+        {
+            random = new SplittableRandom(42);
+            queue = QueueType.valueOf(type).createInstance(null);
+            for(int i=0; i<size; i++)
+                queue.add(entry());
+        }
+
+        private Entry entry()
+        {
+            return new Entry(owner(), 60000 + random.nextInt(300000), "track" + random.nextInt(size));
+        }
+
+        private long owner()
+        {
+            return random.nextInt(owners);
+        }
+
+        private int position()
+        {
+            return random.nextInt(size);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Copy
+    {
+        private AbstractQueue<Entry> queue;
+
+        @Setup(Level.Invocation)
+        public void copy(Filled filled)
+        {
+            queue = QueueType.valueOf(filled.type).createInstance(filled.queue);
+        }
+    }
+
+    @Benchmark
+    public Entry add(Filled s)
+    {
+        s.queue.add(s.entry());
+        return s.queue.pull();
+    }
+
+    @Benchmark
+    public Entry addAt(Filled s)
+    {
+        s.queue.addAt(s.position(), s.entry());
+        return s.queue.pull();
+    }
+
+    @Benchmark
+    public Entry pull(Filled s)
+    {
+        Entry entry = s.queue.pull();
+        s.queue.add(entry);
+        return entry;
+    }
+
+    @Benchmark
+    public Entry moveItem(Filled s)
+    {
+        return s.queue.moveItem(s.position(), s.position());
+    }
+
+    @Benchmark
+    public int shuffle(Filled s)
+    {
+        return s.queue.shuffle(s.owner());
+    }
+
+    @Benchmark
+    public int removeAll(Filled s, Copy c)
+    {
+        return c.queue.removeAll(s.owner());
+    }
+
+    @Benchmark
+    public int skip(Filled s, Copy c)
+    {
+        c.queue.skip(s.size / 2);
+        return c.queue.size();
+    }
+
+    public static class Entry implements Queueable
+    {
+        private final long owner, duration;
+        private final String key;
+
+        private Entry(long owner, long duration, String key)
+        {
+            this.owner = owner;
+            this.duration = duration;
+            this.key = key;
+        }
+
+        @Override
+        public long getIdentifier()
+        {
+            return owner;
+        }
+
+        @Override
+        public long getDuration()
+        {
+            return duration;
+        }
+
+        @Override
+        public String getKey()
+        {
+            return key;
+        }
+    }
+}
@@ -143,6 +143,9 @@ public class Bot
             return;
         shuttingDown = true;
         threadpool.shutdownNow();
+        // save the queues before they are cleared below
+        if(players.getQueueJournal()!=null)
+            players.getQueueJournal().save();
         if(jda.getStatus()!=JDA.Status.SHUTTING_DOWN)
         {
             jda.getGuilds().stream().forEach(g ->
@@ -152,11 +155,13 @@ public class Bot
                 if(ah!=null)
                 {
                     ah.stopAndClear();
-                    ah.getPlayer().destroy();
+                    ah.destroy();
                 }
             });
             jda.shutdown();
         }
+        players.getSponsorBlockClient().saveCache();
+        players.getLoadCache().saveCache();
         if(gui!=null)
             gui.dispose();
         System.exit(0);
@@ -15,6 +15,8 @@
  */
 package com.jagrosh.jmusicbot;
 
+import com.jagrosh.jmusicbot.audio.EngineProfile;
+import com.jagrosh.jmusicbot.audio.QueueQuota;
 import com.jagrosh.jmusicbot.entities.Prompt;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 import com.jagrosh.jmusicbot.utils.TimeUtil;
@@ -23,6 +25,8 @@ import com.typesafe.config.*;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
 import net.dv8tion.jda.api.OnlineStatus;
 import net.dv8tion.jda.api.entities.Activity;
 
@@ -42,13 +46,19 @@ public class BotConfig
     private String token, prefix, altprefix, helpWord, playlistsFolder, logLevel,
             successEmoji, warningEmoji, errorEmoji, loadingEmoji, searchingEmoji,
             evalEngine;
-    private boolean youtubeOauth2, stayInChannel, songInGame, npImages, updatealerts, useEval, dbots;
-    private long owner, maxSeconds, aloneTimeUntilStop;
-    private int maxYTPlaylistPages;
+    private boolean youtubeOauth2, stayInChannel, songInGame, npImages, updatealerts, useEval, dbots,
+            sponsorBlockPersist, queuePersist, loadCachePersist, incrementalYTPlaylists;
+    private long owner, maxSeconds, aloneTimeUntilStop, sponsorBlockCacheHours, gaplessPreload, playerIdleTimeout,
+            loadCacheMinutes, loadCacheSearchMinutes;
+    private int maxYTPlaylistPages, sponsorBlockCacheSize, sponsorBlockPrefetch, playerPoolSize, queueLiveEntries, queueSpillAfter,
+            loadCacheSize, playlistLoads, playlistLookahead;
+    private Map<String, Long> loadCacheSourceMinutes;
     private double skipratio;
     private OnlineStatus status;
     private Activity game;
     private Config aliases, transforms;
+    private EngineProfile engineProfile;
+    private QueueQuota queueQuota;
 
     private boolean valid = false;
     
@@ -94,11 +104,34 @@ public class BotConfig
             evalEngine = config.getString("evalengine");
             maxSeconds = config.getLong("maxtime");
             maxYTPlaylistPages = config.getInt("maxytplaylistpages");
+            incrementalYTPlaylists = config.getBoolean("incrementalytplaylists");
             aloneTimeUntilStop = config.getLong("alonetimeuntilstop");
+            gaplessPreload = config.getLong("gaplesspreload");
             playlistsFolder = config.getString("playlistsfolder");
+            playlistLoads = config.getInt("playlistloads");
+            playlistLookahead = config.getInt("playlistlookahead");
             aliases = config.getConfig("aliases");
             transforms = config.getConfig("transforms");
+            engineProfile = EngineProfile.fromConfig(config.getConfig("player"));
+            playerIdleTimeout = config.getLong("player.idletimeout");
+            playerPoolSize = config.getInt("player.poolsize");
+            queueLiveEntries = config.getInt("queue.liveentries");
+            queueSpillAfter = config.getInt("queue.spillafter");
+            queuePersist = config.getBoolean("queue.persist");
+            queueQuota = QueueQuota.fromConfig(config.getConfig("queue"));
             skipratio = config.getDouble("skipratio");
+            sponsorBlockCacheSize = config.getInt("sponsorblock.cachesize");
+            sponsorBlockCacheHours = config.getLong("sponsorblock.cachehours");
+            sponsorBlockPersist = config.getBoolean("sponsorblock.persist");
+            sponsorBlockPrefetch = config.getInt("sponsorblock.prefetch");
+            loadCacheSize = config.getInt("loadcache.cachesize");
+            loadCacheMinutes = config.getLong("loadcache.cacheminutes");
+            loadCacheSearchMinutes = config.getLong("loadcache.searchminutes");
+            loadCachePersist = config.getBoolean("loadcache.persist");
+            Config sources = config.getConfig("loadcache.sources");
+            loadCacheSourceMinutes = new HashMap<>();
+            for(String source: sources.root().keySet())
+                loadCacheSourceMinutes.put(source, sources.getLong(ConfigUtil.joinPath(source)));
             dbots = owner == 113156185389092864L;
             
             // we may need to write a new config file
@@ -314,6 +347,16 @@ public class BotConfig
         return playlistsFolder;
     }
     
+    public int getPlaylistLoads()
+    {
+        return playlistLoads;
+    }
+    
+    public int getPlaylistLookahead()
+    {
+        return playlistLookahead;
+    }
+    
     public boolean getDBots()
     {
         return dbots;
@@ -354,6 +397,11 @@ public class BotConfig
         return maxYTPlaylistPages;
     }
     
+    public boolean getIncrementalYTPlaylists()
+    {
+        return incrementalYTPlaylists;
+    }
+    
     public String getMaxTime()
     {
         return TimeUtil.formatTime(maxSeconds * 1000);
@@ -364,6 +412,59 @@ public class BotConfig
         return aloneTimeUntilStop;
     }
     
+    public long getGaplessPreload()
+    {
+        return gaplessPreload;
+    }
+    
+    public int getSponsorBlockCacheSize()
+    {
+        return sponsorBlockCacheSize;
+    }
+    
+    public long getSponsorBlockCacheHours()
+    {
+        return sponsorBlockCacheHours;
+    }
+    
+    public boolean getSponsorBlockPersist()
+    {
+        return sponsorBlockPersist;
+    }
+    
+    public int getSponsorBlockPrefetch()
+    {
+        return sponsorBlockPrefetch;
+    }
+    
+    public int getLoadCacheSize()
+    {
+        return loadCacheSize;
+    }
+    
+    public long getLoadCacheMinutes()
+    {
+        return loadCacheMinutes;
+    }
+    
+    public long getLoadCacheSearchMinutes()
+    {
+        return loadCacheSearchMinutes;
+    }
+    
+    /**
+     * @return how long links are cached for, in minutes, by lavaplayer source name
+     */
+    public Map<String, Long> getLoadCacheSourceMinutes()
+    {
+        return loadCacheSourceMinutes;
+    }
+    
+    public boolean getLoadCachePersist()
+    {
+        return loadCachePersist;
+    }
+    
     public boolean isTooLong(AudioTrack track)
     {
         if(maxSeconds<=0)
@@ -387,4 +488,39 @@ public class BotConfig
     {
         return transforms;
     }
+    
+    public EngineProfile getEngineProfile()
+    {
+        return engineProfile;
+    }
+    
+    public long getPlayerIdleTimeout()
+    {
+        return playerIdleTimeout;
+    }
+    
+    public int getPlayerPoolSize()
+    {
+        return playerPoolSize;
+    }
+    
+    public int getQueueLiveEntries()
+    {
+        return queueLiveEntries;
+    }
+    
+    public int getQueueSpillAfter()
+    {
+        return queueSpillAfter;
+    }
+    
+    public QueueQuota getQueueQuota()
+    {
+        return queueQuota;
+    }
+    
+    public boolean getQueuePersist()
+    {
+        return queuePersist;
+    }
 }
@@ -212,6 +212,7 @@ public class JMusicBot
                         new QueueTypeCmd(bot),
                         new SetdjCmd(bot),
                         new SkipratioCmd(bot),
+                        new DuplicatesCmd(bot),
                         new SettcCmd(bot),
                         new SetvcCmd(bot),
 
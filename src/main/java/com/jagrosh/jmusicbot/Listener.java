@@ -15,7 +15,10 @@
  */
 package com.jagrosh.jmusicbot;
 
+import com.jagrosh.jmusicbot.audio.QueueJournal;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
+import java.util.Collections;
+import java.util.Set;
 import java.util.concurrent.TimeUnit;
 import com.jagrosh.jmusicbot.utils.YoutubeOauth2TokenHandler;
 import net.dv8tion.jda.api.JDA;
@@ -56,8 +59,12 @@ public class Listener extends ListenerAdapter
             log.warn(event.getJDA().getInviteUrl(JMusicBot.RECOMMENDED_PERMS));
         }
         credit(event.getJDA());
+        QueueJournal journal = bot.getPlayerManager().getQueueJournal();
+        Set<Long> resumed = journal == null ? Collections.emptySet() : journal.resume(event.getJDA());
         event.getJDA().getGuilds().forEach((guild) ->
         {
+            if(resumed.contains(guild.getIdLong()))
+                return;
             try
             {
                 String defpl = bot.getSettingsManager().getSettings(guild).getDefaultPlaylist();
@@ -81,7 +81,9 @@ public class AloneInVoiceHandler
             Exception stackTrace = new Exception("AloneInVoiceHandler disconnecting guild " + guildId + " (" + guild.getName() + ")");
             LOGGER.warn("VOICE DISCONNECT TRIGGERED BY AloneInVoiceHandler", stackTrace);
 
-            ((AudioHandler) guild.getAudioManager().getSendingHandler()).stopAndClear();
+            AudioHandler handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+            if(handler != null)
+                handler.stopAndClear();
             guild.getAudioManager().closeAudioConnection();
 
             toRemove.add(guildId);
@@ -16,6 +16,7 @@
 package com.jagrosh.jmusicbot.audio;
 
 import com.jagrosh.jmusicbot.playlist.PlaylistLoader.Playlist;
+import com.jagrosh.jmusicbot.playlist.PlaylistLoader.PlaylistLoadError;
 import com.jagrosh.jmusicbot.queue.AbstractQueue;
 import com.jagrosh.jmusicbot.settings.QueueType;
 import com.jagrosh.jmusicbot.utils.TimeUtil;
@@ -25,13 +26,17 @@ import com.sedmelluq.discord.lavaplayer.player.event.AudioEventAdapter;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackEndReason;
-import com.sedmelluq.discord.lavaplayer.track.playback.AudioFrame;
+import com.sedmelluq.discord.lavaplayer.format.StandardAudioDataFormats;
+import com.sedmelluq.discord.lavaplayer.track.playback.MutableAudioFrame;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
 import com.jagrosh.jmusicbot.settings.Settings;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
 import com.sedmelluq.discord.lavaplayer.source.youtube.YoutubeAudioTrack;
@@ -59,63 +64,405 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     private final List<AudioTrack> defaultQueue = new LinkedList<>();
     private final Set<String> votes = new HashSet<>();
 
-    // Track metadata mapping to avoid userData conflicts with YouTube tracks
-    private final Map<String, RequestMetadata> trackMetadata = new ConcurrentHashMap<>();
+    // Request metadata of the playing track. It travels with the QueuedTrack rather
+    // than the AudioTrack's userData, which YouTube tracks use internally
+    private volatile RequestMetadata currentMetadata = RequestMetadata.EMPTY;
 
     private final PlayerManager manager;
-    private final AudioPlayer audioPlayer;
     private final long guildId;
 
-    private AudioFrame lastFrame;
-    private AbstractQueue<QueuedTrack> queue;
+    // Gapless playback: the next track is started paused on the standby player
+    // shortly before the current one ends, and the players are swapped when it does
+    private volatile AudioPlayer audioPlayer;
+    private volatile AudioPlayer standbyPlayer;
+    private volatile AudioTrack preloadedFor;
+    // a track whose preload failed; it is not preloaded again, and loads when it starts
+    private volatile AudioTrack preloadFailedFor;
+    private final long gaplessPreloadMs;
+    private volatile long trackEndNanos = 0;
+    private volatile long lastTrackGapMs = -1;
+
+    // set by PlayerManager's idle player reclamation, and cleared by it and
+    // whenever a command sets up the handler
+    volatile long idleSince = 0;
+    private static final LongAdder TRACK_SWITCHES = new LongAdder();
+    private static final LongAdder TRACK_GAP_MS = new LongAdder();
+
+    // Reusable send path: lavaplayer writes each frame directly into sendBuffer,
+    // so no AudioFrame or ByteBuffer is allocated per 20ms packet
+    private final ByteBuffer sendBuffer;
+    private final MutableAudioFrame sendFrame;
+    private static final LongAdder FRAMES_SENT = new LongAdder();
+
+    // replaced when the queue type changes, under quotaLock
+    private volatile AbstractQueue<QueuedTrack> queue;
+
+    // Queue entries past the first liveEntries are kept encoded, and those
+    // past spillAfter are moved into the spill file
+    private final int liveEntries, spillAfter;
+    private TrackSpill spill;
+    private boolean spillFailed = false;
+
+    // held while checking the queue quota, adding to or pulling from the
+    // queue, and replacing the queue
+    private final Object quotaLock = new Object();
+
+    // playlists that are being queued a few tracks at a time
+    private final List<LazyPlaylist> lazyPlaylists = new CopyOnWriteArrayList<>();
 
     // SponsorBlock integration
-    private List<SponsorBlockClient.Segment> sponsorSegments = new LinkedList<>();
-    private int currentSegmentIndex = 0;
-    private SponsorBlockClient sponsorBlockClient = new SponsorBlockClient();
+    // skipIndex is published by the HttpClient callback; the remaining fields
+    // are only touched by the audio thread in canProvide()
+    private volatile SponsorBlockClient.SkipIndex skipIndex = SponsorBlockClient.SkipIndex.EMPTY;
+    private SponsorBlockClient.SkipIndex activeSkipIndex = SponsorBlockClient.SkipIndex.EMPTY;
+    private int skipCursor = 0;
+    private long nextSkipStart = Long.MAX_VALUE;
+    private long lastSkipCheck = 0;
 
     protected AudioHandler(PlayerManager manager, Guild guild, AudioPlayer player)
     {
         this.manager = manager;
         this.audioPlayer = player;
         this.guildId = guild.getIdLong();
+        this.gaplessPreloadMs = manager.getBot().getConfig().getGaplessPreload() * 1000;
+        this.liveEntries = manager.getBot().getConfig().getQueueLiveEntries();
+        this.spillAfter = manager.getBot().getConfig().getQueueSpillAfter();
+
+        this.sendBuffer = ByteBuffer.allocateDirect(StandardAudioDataFormats.DISCORD_OPUS.maximumChunkSize());
+        this.sendFrame = new MutableAudioFrame();
+        this.sendFrame.setBuffer(sendBuffer);
 
         this.setQueueType(manager.getBot().getSettingsManager().getSettings(guildId).getQueueType());
     }
 
     public void setQueueType(QueueType type)
     {
-        queue = type.createInstance(queue);
+        // writers that add under quotaLock wait for the copy, so nothing is
+        // added to the old queue after it has been copied
+        synchronized(quotaLock)
+        {
+            queue = type.createInstance(queue);
+        }
+    }
+
+    /**
+     * Puts a track at the front of the queue, with the same quota and
+     * duplicate checks as {@link #addTracks(List)}
+     *
+     * @return whether the track was added, and where
+     */
+    public QueueQuota.Result addTrackToFront(QueuedTrack qtrack)
+    {
+        return addTracks(Collections.singletonList(qtrack), true);
     }
 
-    public int addTrackToFront(QueuedTrack qtrack)
+    /**
+     * Queues a batch of tracks, such as a whole playlist, in one go. The
+     * tracks are taken in order up to the first one that would go over the
+     * queue quota; a track that starts playing right away is not counted.
+     * If the guild rejects duplicates, tracks that are already playing or
+     * queued are left out first.
+     *
+     * @param qtracks the tracks, in order, all requested by the same user
+     * @return how many tracks were added and where
+     */
+    public QueueQuota.Result addTracks(List<QueuedTrack> qtracks)
     {
-        if(audioPlayer.getPlayingTrack()==null)
+        return addTracks(qtracks, false);
+    }
+
+    private QueueQuota.Result addTracks(List<QueuedTrack> qtracks, boolean front)
+    {
+        QueueQuota quota = manager.getBot().getConfig().getQueueQuota();
+        boolean rejectDuplicates = manager.getBot().getSettingsManager().getSettings(guildId).getRejectDuplicates();
+        synchronized(quotaLock)
         {
-            audioPlayer.playTrack(qtrack.getTrack());
-            return -1;
+            int requested = qtracks.size();
+            if(rejectDuplicates)
+                qtracks = withoutDuplicates(qtracks);
+            if(qtracks.isEmpty())
+                return new QueueQuota.Result(0, -1, null, requested);
+            long owner = qtracks.get(0).getIdentifier();
+            boolean starting = audioPlayer.getPlayingTrack()==null;
+            int fit = starting ? 1 : 0;
+            long length = 0;
+            QueueQuota.Limit limit = null;
+            for(; fit<qtracks.size(); fit++)
+            {
+                long next = length + QueueQuota.lengthOf(qtracks.get(fit));
+                limit = quota.check(queue, owner, fit + (starting ? 0 : 1), next);
+                if(limit != null)
+                    break;
+                length = next;
+            }
+            int pos;
+            if(starting)
+            {
+                startTrack(qtracks.get(0).getTrack(), qtracks.get(0).getRequestMetadata());
+                enqueue(qtracks.subList(1, fit));
+                pos = -1;
+            }
+            else if(front)
+            {
+                for(int i=0; i<fit; i++)
+                    queue.addAt(i, qtracks.get(i));
+                pos = 0;
+            }
+            else
+                pos = enqueue(qtracks.subList(0, fit));
+            if(fit > 0 && pos < manager.getBot().getConfig().getSponsorBlockPrefetch())
+                prefetchSponsorSegments();
+            return new QueueQuota.Result(fit, pos, limit, requested - qtracks.size());
         }
+    }
+
+    /**
+     * Queues a playlist a few tracks at a time, as the queue plays. Its first
+     * item starts loading right away.
+     */
+    public void addLazyPlaylist(LazyPlaylist playlist)
+    {
+        lazyPlaylists.add(playlist);
+        playlist.fill(this);
+    }
+
+    /**
+     * Adds tracks to a lazy playlist whose source is still growing, and loads
+     * them if the queue is waiting for them
+     *
+     * @param complete true if no more tracks will be added to the playlist
+     */
+    public void extendLazyPlaylist(LazyPlaylist playlist, List<AudioTrack> tracks, boolean complete)
+    {
+        ((LazyPlaylist.Tracks) playlist.getSource()).add(tracks, complete);
+        if(!lazyPlaylists.contains(playlist))
+            return;
+        if(playlist.isFinished())
+            finishLazy(playlist);
+        else
+            playlist.fill(this);
+    }
+
+    /**
+     * Adds the tracks of a lazy playlist's item to the queue, and asks it for more
+     *
+     * @param error why the item failed to load, or null
+     */
+    void queueLazy(LazyPlaylist playlist, List<AudioTrack> tracks, PlaylistLoadError error)
+    {
+        List<QueuedTrack> qtracks = new ArrayList<>(tracks.size());
+        for(AudioTrack track: tracks)
+            if(!manager.getBot().getConfig().isTooLong(track))
+                qtracks.add(new QueuedTrack(track, playlist.getRequestMetadata()));
+        QueueQuota.Result result = null;
+        if(!qtracks.isEmpty() && lazyPlaylists.contains(playlist))
+            result = addTracks(qtracks);
+        playlist.loaded(qtracks, result, tracks.size() - qtracks.size(), error);
+        if(playlist.isFinished())
+            finishLazy(playlist);
         else
+            playlist.fill(this);
+    }
+
+    /**
+     * Drops a lazy playlist that has stopped loading and reports on it. If the
+     * playlist was all that was left, and its last items never got to play,
+     * the queue has ended here rather than in {@link #onTrackEnd}.
+     */
+    private void finishLazy(LazyPlaylist playlist)
+    {
+        if(!lazyPlaylists.remove(playlist))
+            return;
+        playlist.finish();
+        if(lazyPlaylists.isEmpty() && audioPlayer.getPlayingTrack() == null && queue.isEmpty())
+            queueEnded();
+    }
+
+    /**
+     * @return true if the entry is in the queue; looked up by key, so this does not scan the queue
+     */
+    boolean isQueued(QueuedTrack qtrack)
+    {
+        return qtrack.getKey() != null && queue.find(qtrack.getKey()).contains(qtrack);
+    }
+
+    /**
+     * Stops loading more of the user's lazy playlists
+     *
+     * @return the number of playlists stopped
+     */
+    public int stopLazyPlaylists(long owner)
+    {
+        int stopped = 0;
+        for(LazyPlaylist playlist: lazyPlaylists)
         {
-            queue.addAt(0, qtrack);
-            return 0;
+            if(playlist.getRequestMetadata().getOwner() == owner)
+            {
+                playlist.stop();
+                lazyPlaylists.remove(playlist);
+                stopped++;
+            }
         }
+        return stopped;
+    }
+
+    /**
+     * @return the number of lazy playlist items that have not been loaded into the queue yet
+     */
+    public int getLazyRemaining()
+    {
+        int remaining = 0;
+        for(LazyPlaylist playlist: lazyPlaylists)
+            remaining += playlist.getRemaining();
+        return remaining;
+    }
+
+    private void stopLazyPlaylists()
+    {
+        for(LazyPlaylist playlist: lazyPlaylists)
+            playlist.stop();
+        lazyPlaylists.clear();
     }
 
-    public int addTrack(QueuedTrack qtrack)
+    /**
+     * Puts back a queue read from the {@link QueueJournal}: the track that was
+     * playing continues from where it was, and the rest are queued in the same
+     * order. Quotas and duplicate checks are not applied again.
+     *
+     * @param playing the track that was playing, or null to start with the first queued track
+     * @param position where to continue the playing track, in milliseconds
+     * @param paused whether the player was paused
+     * @param qtracks the queued tracks, in order
+     */
+    void restore(QueuedTrack playing, long position, boolean paused, List<QueuedTrack> qtracks)
     {
-        // Store metadata separately to avoid userData conflicts
-        if (qtrack.getRequestMetadata() != null) {
-            trackMetadata.put(qtrack.getTrack().getIdentifier(), qtrack.getRequestMetadata());
+        synchronized(quotaLock)
+        {
+            List<QueuedTrack> rest = new ArrayList<>(qtracks);
+            if(playing == null && !rest.isEmpty())
+            {
+                playing = rest.remove(0);
+                position = -1;
+            }
+            if(playing != null)
+            {
+                AudioTrack track = playing.getTrack();
+                if(track != null && position >= 0 && track.isSeekable())
+                    track.setPosition(position);
+                audioPlayer.setPaused(paused);
+                startTrack(track, playing.getRequestMetadata());
+            }
+            enqueue(rest);
+            prefetchSponsorSegments();
         }
+    }
 
-        if(audioPlayer.getPlayingTrack()==null)
+    // looks each track up in the queue's key index, so this does not scan the queue
+    private List<QueuedTrack> withoutDuplicates(List<QueuedTrack> qtracks)
+    {
+        Set<String> seen = new HashSet<>();
+        AudioTrack playing = audioPlayer.getPlayingTrack();
+        if(playing != null)
+            seen.add(QueuedTrack.keyOf(playing));
+        List<QueuedTrack> unique = new ArrayList<>(qtracks.size());
+        for(QueuedTrack qtrack: qtracks)
         {
-            audioPlayer.playTrack(qtrack.getTrack());
-            return -1;
+            String key = qtrack.getKey();
+            if(key == null || (!queue.contains(key) && seen.add(key)))
+                unique.add(qtrack);
         }
-        else
-            return queue.add(qtrack);
+        return unique;
+    }
+
+    /**
+     * Adds tracks to the queue, compacting any that land beyond the live part of it
+     *
+     * @return the queue position of the first track, or -1 if there were none
+     */
+    private int enqueue(List<QueuedTrack> qtracks)
+    {
+        if(liveEntries <= 0 || qtracks.isEmpty())
+            return queue.addAll(qtracks);
+        int size = queue.size();
+        TrackSpill target = spillAfter > 0 && size + qtracks.size() > spillAfter ? getSpill() : null;
+        if(target == null)
+        {
+            compact(qtracks, size, null);
+            return queue.addAll(qtracks);
+        }
+        // hold the spill so it cannot be rewound or compacted between writing and queueing
+        synchronized(target)
+        {
+            if(target.wantsCompaction())
+                target.compact(spilledEntries());
+            compact(qtracks, size, target);
+            return queue.addAll(qtracks);
+        }
+    }
+
+    private void compact(List<QueuedTrack> qtracks, int size, TrackSpill target)
+    {
+        for(int i = Math.max(0, liveEntries - size); i < qtracks.size(); i++)
+            qtracks.get(i).compact(manager, target != null && size + i >= spillAfter ? target : null);
+    }
+
+    /**
+     * @return the spill file records of the queued entries; only called now and
+     *         then, when the spill file has grown by half a region
+     */
+    private List<TrackSpill.Entry> spilledEntries()
+    {
+        List<TrackSpill.Entry> entries = new ArrayList<>();
+        for(QueuedTrack qtrack: queue.getList())
+        {
+            TrackSpill.Entry entry = qtrack.getSpillEntry();
+            if(entry != null)
+                entries.add(entry);
+        }
+        return entries;
+    }
+
+    private synchronized TrackSpill getSpill()
+    {
+        if(spill == null && !spillFailed)
+        {
+            try
+            {
+                spill = new TrackSpill();
+            }
+            catch(IOException ex)
+            {
+                spillFailed = true;
+                LoggerFactory.getLogger("AudioHandler").warn("Could not create a queue spill file, long queues will stay on the heap: " + ex.getMessage());
+            }
+        }
+        return spill;
+    }
+
+    /**
+     * Reuses the spill file from the start once nothing in the queue points into it
+     */
+    private void rewindSpill()
+    {
+        TrackSpill s;
+        synchronized(this)
+        {
+            s = spill;
+        }
+        if(s == null)
+            return;
+        synchronized(s)
+        {
+            if(queue.isEmpty())
+                s.rewind();
+        }
+    }
+
+    private synchronized void closeSpill()
+    {
+        if(spill != null)
+            spill.close();
+        spill = null;
     }
 
     public AbstractQueue<QueuedTrack> getQueue()
@@ -125,8 +472,17 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
 
     public void stopAndClear()
     {
-        queue.clear();
+        stopLazyPlaylists();
+        synchronized(quotaLock)
+        {
+            queue.clear();
+        }
+        rewindSpill();
         defaultQueue.clear();
+        preloadedFor = null;
+        preloadFailedFor = null;
+        if(standbyPlayer != null)
+            standbyPlayer.stopTrack();
         audioPlayer.stopTrack();
         //current = null;
     }
@@ -150,15 +506,81 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     {
         if(audioPlayer.getPlayingTrack() == null)
             return RequestMetadata.EMPTY;
+        return currentMetadata;
+    }
+
+    /**
+     * Plays a track along with the metadata of the request that queued it.
+     * Every track this handler plays goes through here.
+     */
+    private void startTrack(AudioTrack track, RequestMetadata rm)
+    {
+        currentMetadata = rm == null ? RequestMetadata.EMPTY : rm;
+        if(!playPreloaded(track))
+            audioPlayer.playTrack(track);
+    }
+
+    /**
+     * @return how long the last switch between two tracks was silent, in milliseconds,
+     *         or -1 if no switch has happened yet
+     */
+    public long getLastTrackGap()
+    {
+        return lastTrackGapMs;
+    }
+
+    /**
+     * @return the number of track switches measured by all handlers
+     */
+    public static long getTrackSwitches()
+    {
+        return TRACK_SWITCHES.sum();
+    }
+
+    /**
+     * @return the total silence between tracks measured by all handlers, in milliseconds
+     */
+    public static long getTotalTrackGap()
+    {
+        return TRACK_GAP_MS.sum();
+    }
 
-        // Get metadata from our safe mapping instead of userData
-        RequestMetadata metadata = trackMetadata.get(audioPlayer.getPlayingTrack().getIdentifier());
-        return metadata != null ? metadata : RequestMetadata.EMPTY;
-    }    public boolean playFromDefault()
+    public void destroy()
+    {
+        stopLazyPlaylists();
+        audioPlayer.destroy();
+        if(standbyPlayer != null)
+            standbyPlayer.destroy();
+        closeSpill();
+    }
+
+    /**
+     * @return true if nothing is playing or queued, so the handler can be reclaimed
+     */
+    boolean isIdle()
+    {
+        return audioPlayer.getPlayingTrack() == null && queue.isEmpty() && defaultQueue.isEmpty() && lazyPlaylists.isEmpty();
+    }
+
+    /**
+     * Hands this handler's players back to the manager once it has been detached from its guild
+     */
+    void release()
+    {
+        stopLazyPlaylists();
+        preloadedFor = null;
+        preloadFailedFor = null;
+        manager.releasePlayer(audioPlayer, this);
+        if(standbyPlayer != null)
+            manager.releasePlayer(standbyPlayer, this);
+        closeSpill();
+    }
+
+    public boolean playFromDefault()
     {
         if(!defaultQueue.isEmpty())
         {
-            audioPlayer.playTrack(defaultQueue.remove(0));
+            startTrack(defaultQueue.remove(0), RequestMetadata.EMPTY);
             return true;
         }
         Settings settings = manager.getBot().getSettingsManager().getSettings(guildId);
@@ -171,7 +593,7 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
         pl.loadTracks(manager, (at) ->
         {
             if(audioPlayer.getPlayingTrack()==null)
-                audioPlayer.playTrack(at);
+                startTrack(at, RequestMetadata.EMPTY);
             else
                 defaultQueue.add(at);
         }, () ->
@@ -190,77 +612,195 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     @Override
     public void onTrackEnd(AudioPlayer player, AudioTrack track, AudioTrackEndReason endReason)
     {
+        if(player != audioPlayer)
+        {
+            // a preloaded track was stopped or failed on the standby player
+            if(player.getPlayingTrack() == null)
+            {
+                if(endReason.mayStartNext)
+                    preloadFailedFor = preloadedFor;
+                preloadedFor = null;
+            }
+            return;
+        }
+        trackEndNanos = System.nanoTime();
+        RequestMetadata endedMetadata = currentMetadata;
+        currentMetadata = RequestMetadata.EMPTY;
         RepeatMode repeatMode = manager.getBot().getSettingsManager().getSettings(guildId).getRepeatMode();
-        // if the track ended normally, and we're in repeat mode, re-add it to the queue
-        if(endReason==AudioTrackEndReason.FINISHED && repeatMode != RepeatMode.OFF)
+        QueuedTrack qt;
+        synchronized(quotaLock)
         {
-            // Get metadata from our safe mapping
-            RequestMetadata trackMetadata = this.trackMetadata.get(track.getIdentifier());
-            if (trackMetadata == null) {
-                trackMetadata = RequestMetadata.EMPTY;
+            // if the track ended normally, and we're in repeat mode, re-add it to the queue
+            if(endReason==AudioTrackEndReason.FINISHED && repeatMode != RepeatMode.OFF)
+            {
+                QueuedTrack clone = new QueuedTrack(track.makeClone(), endedMetadata);
+                if(repeatMode == RepeatMode.ALL)
+                    enqueue(Collections.singletonList(clone));
+                else
+                    queue.addAt(0, clone);
             }
 
-            QueuedTrack clone = new QueuedTrack(track.makeClone(), trackMetadata);
-            if(repeatMode == RepeatMode.ALL)
-                queue.add(clone);
-            else
-                queue.addAt(0, clone);
+            qt = queue.pull();
+            // entries kept encoded are decoded here, and any that no longer decode are dropped
+            while(qt != null && qt.getTrack() == null)
+                qt = queue.pull();
         }
-
-        if(queue.isEmpty())
+        if(qt == null)
         {
-            if(!playFromDefault())
+            rewindSpill();
+            // a lazy playlist that is still loading starts playing again once its next item loads
+            if(!lazyPlaylists.isEmpty())
             {
                 manager.getBot().getNowplayingHandler().onTrackUpdate(null);
-                if(!manager.getBot().getConfig().getStay())
-                {
-                    // Log onTrackEnd disconnect
-                    org.slf4j.LoggerFactory.getLogger("AudioHandler").warn("VOICE DISCONNECT: onTrackEnd - queue empty, no default playlist, and stayinchannel=false for guild {}", guildId);
-                    manager.getBot().closeAudioConnection(guildId);
-                }
-                // unpause, in the case when the player was paused and the track has been skipped.
-                // this is to prevent the player being paused next time it's being used.
-                player.setPaused(false);
+                trackEndNanos = 0;
             }
+            else
+                queueEnded();
         }
         else
         {
-            QueuedTrack qt = queue.pull();
-            player.playTrack(qt.getTrack());
+            startTrack(qt.getTrack(), qt.getRequestMetadata());
+            prefetchSponsorSegments();
         }
+        for(LazyPlaylist playlist: lazyPlaylists)
+            playlist.fill(this);
+    }
 
-        // Clean up metadata for finished track to prevent memory leaks
-        if (track != null) {
-            trackMetadata.remove(track.getIdentifier());
+    /**
+     * Plays the default playlist once nothing else is left to play, or else
+     * leaves the voice channel unless the bot is set to stay
+     */
+    private void queueEnded()
+    {
+        if(playFromDefault())
+            return;
+        manager.getBot().getNowplayingHandler().onTrackUpdate(null);
+        if(!manager.getBot().getConfig().getStay())
+        {
+            // Log queue end disconnect
+            org.slf4j.LoggerFactory.getLogger("AudioHandler").warn("VOICE DISCONNECT: queue ended - queue empty, no default playlist, and stayinchannel=false for guild {}", guildId);
+            manager.getBot().closeAudioConnection(guildId);
         }
+        // unpause, in the case when the player was paused and the track has been skipped.
+        // this is to prevent the player being paused next time it's being used.
+        audioPlayer.setPaused(false);
+        trackEndNanos = 0;
     }
 
     @Override
     public void onTrackException(AudioPlayer player, AudioTrack track, FriendlyException exception) {
-        LoggerFactory.getLogger("AudioHandler").error("Track " + track.getIdentifier() + " has failed to play", exception);
+        if (player != audioPlayer)
+            LoggerFactory.getLogger("AudioHandler").warn("Failed to preload track " + track.getIdentifier() + ", it will be loaded when it starts");
+        else
+            LoggerFactory.getLogger("AudioHandler").error("Track " + track.getIdentifier() + " has failed to play", exception);
     }
 
     @Override
     public void onTrackStart(AudioPlayer player, AudioTrack track)
     {
+        // preloaded tracks are announced when the players are swapped
+        if(player != audioPlayer)
+            return;
         votes.clear();
         manager.getBot().getNowplayingHandler().onTrackUpdate(track);
 
         // SponsorBlock: fetch segments asynchronously if YouTube track
-        sponsorSegments.clear();
-        currentSegmentIndex = 0;
-        if (track.getSourceManager() != null && track.getSourceManager().getClass().getSimpleName().toLowerCase().contains("youtube")) {
+        skipIndex = SponsorBlockClient.SkipIndex.EMPTY;
+        if (isYoutube(track)) {
             String videoId = track.getIdentifier();
-            sponsorBlockClient.fetchSegmentsAsync(videoId).thenAccept(segments -> {
-                // Only update if the same track is still playing
-                if (audioPlayer.getPlayingTrack() != null && audioPlayer.getPlayingTrack().getIdentifier().equals(videoId)) {
-                    sponsorSegments = segments;
-                    currentSegmentIndex = 0;
-                }
-            });
+            SponsorBlockClient.SkipIndex cached = manager.getSponsorBlockClient().getCached(videoId);
+            if (cached != null) {
+                // prefetched while the track was queued, so it applies from the first frame
+                skipIndex = cached;
+            } else {
+                manager.getSponsorBlockClient().getSkipIndexAsync(videoId).thenAccept(index -> {
+                    // Only update if the same track is still playing
+                    if (audioPlayer.getPlayingTrack() != null && audioPlayer.getPlayingTrack().getIdentifier().equals(videoId)) {
+                        skipIndex = index;
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * SponsorBlock: warms the shared segment cache for the next few queued tracks,
+     * so their segments are already known when they start playing.
+     */
+    private void prefetchSponsorSegments()
+    {
+        int count = manager.getBot().getConfig().getSponsorBlockPrefetch();
+        if(count <= 0 || manager.getBot().getConfig().getSponsorBlockCacheSize() <= 0)
+            return;
+        for(QueuedTrack upcoming: queue.head(count))
+        {
+            AudioTrack track = upcoming.getTrack();
+            if(track != null && isYoutube(track) && manager.getSponsorBlockClient().getCached(track.getIdentifier()) == null)
+                manager.getSponsorBlockClient().getSkipIndexAsync(track.getIdentifier());
         }
     }
 
+    /**
+     * Gapless playback: starts a clone of the next track paused on the standby
+     * player once the current track is within the preload window, so that its
+     * stream is opened and buffered by the time the current track ends.
+     */
+    private void preloadNext(AudioTrack playing)
+    {
+        if(playing.getInfo().isStream || playing.getDuration() - playing.getPosition() > gaplessPreloadMs)
+            return;
+        QueuedTrack head = queue.peek();
+        AudioTrack next = head != null ? head.getTrack() : !defaultQueue.isEmpty() ? defaultQueue.get(0) : null;
+        if(next == null || next == preloadedFor || next == preloadFailedFor)
+            return;
+        // repeating the current track puts it in front of the preloaded one
+        if(manager.getBot().getSettingsManager().getSettings(guildId).getRepeatMode() == RepeatMode.SINGLE)
+            return;
+        if(standbyPlayer == null)
+        {
+            standbyPlayer = manager.acquirePlayer();
+            standbyPlayer.addListener(this);
+        }
+        AudioTrack clone = next.makeClone();
+        if(next.isSeekable() && next.getPosition() > 0)
+            clone.setPosition(next.getPosition());
+        preloadedFor = next;
+        standbyPlayer.setPaused(true);
+        standbyPlayer.playTrack(clone);
+    }
+
+    /**
+     * Gapless playback: swaps in the standby player if it has preloaded the given track.
+     *
+     * @return true if the preloaded track is now playing, false if the caller must play the track itself
+     */
+    private boolean playPreloaded(AudioTrack next)
+    {
+        AudioTrack preloaded = preloadedFor;
+        preloadedFor = null;
+        preloadFailedFor = null;
+        AudioPlayer standby = standbyPlayer;
+        if(standby == null)
+            return false;
+        if(preloaded != next || standby.getPlayingTrack() == null)
+        {
+            standby.stopTrack();
+            return false;
+        }
+        AudioPlayer previous = audioPlayer;
+        standby.setVolume(previous.getVolume());
+        standby.setPaused(previous.isPaused());
+        standbyPlayer = previous;
+        audioPlayer = standby;
+        onTrackStart(standby, standby.getPlayingTrack());
+        return true;
+    }
+
+    private static boolean isYoutube(AudioTrack track)
+    {
+        return track.getSourceManager() != null && track.getSourceManager().getClass().getSimpleName().toLowerCase().contains("youtube");
+    }
+
 
     // Formatting
     public MessageCreateData getNowPlaying(JDA jda)
@@ -313,12 +853,16 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
 
     public MessageCreateData getNoMusicPlaying(JDA jda)
     {
-        Guild guild = guild(jda);
+        return getNoMusicPlaying(guild(jda), manager.getBot().getConfig().getSuccess(), audioPlayer.getVolume());
+    }
+
+    public static MessageCreateData getNoMusicPlaying(Guild guild, String success, int volume)
+    {
         return new MessageCreateBuilder()
-                .setContent(FormatUtil.filter(manager.getBot().getConfig().getSuccess()+" **Now Playing...**"))
+                .setContent(FormatUtil.filter(success+" **Now Playing...**"))
                 .setEmbeds(new EmbedBuilder()
                 .setTitle("No music playing")
-                .setDescription(STOP_EMOJI+" "+FormatUtil.progressBar(-1)+" "+FormatUtil.volumeIcon(audioPlayer.getVolume()))
+                .setDescription(STOP_EMOJI+" "+FormatUtil.progressBar(-1)+" "+FormatUtil.volumeIcon(volume))
                 .setColor(guild.getSelfMember().getColor())
                 .build()).build();
     }
@@ -329,57 +873,86 @@ public class AudioHandler extends AudioEventAdapter implements AudioSendHandler
     }
 
     // Audio Send Handler methods
-    /*@Override
+    @Override
     public boolean canProvide()
     {
-        if (lastFrame == null)
-            lastFrame = audioPlayer.provide();
-
-        return lastFrame != null;
+        // fill the reusable frame in place; this writes straight into sendBuffer
+        sendBuffer.clear();
+        boolean provided = audioPlayer.provide(sendFrame);
+        AudioTrack playing = audioPlayer.getPlayingTrack();
+        if (playing != null)
+        {
+            skipSponsorSegments(playing);
+            if (gaplessPreloadMs > 0)
+                preloadNext(playing);
+        }
+        if (provided && trackEndNanos != 0)
+        {
+            // first frame after a track switch
+            lastTrackGapMs = (System.nanoTime() - trackEndNanos) / 1_000_000;
+            trackEndNanos = 0;
+            TRACK_SWITCHES.increment();
+            TRACK_GAP_MS.add(lastTrackGapMs);
+        }
+        return provided;
     }
 
-    @Override
-    public byte[] provide20MsAudio()
+    /**
+     * SponsorBlock: seeks past the current segment, if any. In the common case
+     * this is a single comparison against the start of the next segment.
+     */
+    private void skipSponsorSegments(AudioTrack track)
     {
-        if (lastFrame == null)
-            lastFrame = audioPlayer.provide();
-
-        byte[] data = lastFrame != null ? lastFrame.getData() : null;
-        lastFrame = null;
-
-        return data;
-    }*/
+        SponsorBlockClient.SkipIndex index = skipIndex;
+        if (index != activeSkipIndex)
+        {
+            activeSkipIndex = index;
+            lastSkipCheck = Long.MAX_VALUE; // force a resync below
+        }
+        if (index.isEmpty())
+            return;
+        long positionMs = track.getPosition();
+        if (positionMs < lastSkipCheck)
+        {
+            // new index, or the track was seeked backwards
+            resyncSkipCursor(index, positionMs);
+        }
+        lastSkipCheck = positionMs;
+        if (positionMs < nextSkipStart)
+            return;
+        if (positionMs >= index.end(skipCursor))
+        {
+            // the track was seeked forwards past the segment
+            resyncSkipCursor(index, positionMs);
+            if (positionMs < nextSkipStart)
+                return;
+        }
+        long end = index.end(skipCursor);
+        track.setPosition(end);
+        lastSkipCheck = end;
+        skipCursor++;
+        nextSkipStart = skipCursor < index.size() ? index.start(skipCursor) : Long.MAX_VALUE;
+    }
 
-    @Override
-    public boolean canProvide()
+    private void resyncSkipCursor(SponsorBlockClient.SkipIndex index, long positionMs)
     {
-        lastFrame = audioPlayer.provide();
-        // SponsorBlock: skip segments if needed
-        if (audioPlayer.getPlayingTrack() != null && !sponsorSegments.isEmpty()) {
-            long positionMs = audioPlayer.getPlayingTrack().getPosition();
-            while (currentSegmentIndex < sponsorSegments.size()) {
-                SponsorBlockClient.Segment seg = sponsorSegments.get(currentSegmentIndex);
-                long segStart = (long)(seg.start * 1000);
-                long segEnd = (long)(seg.end * 1000);
-                if (positionMs >= segStart && positionMs < segEnd) {
-                    audioPlayer.getPlayingTrack().setPosition(segEnd);
-                    currentSegmentIndex++;
-                    // After seeking, update position
-                    positionMs = audioPlayer.getPlayingTrack().getPosition();
-                } else if (positionMs >= segEnd) {
-                    currentSegmentIndex++;
-                } else {
-                    break;
-                }
-            }
-        }
-        return lastFrame != null;
+        skipCursor = index.indexAfter(positionMs);
+        nextSkipStart = skipCursor < index.size() ? index.start(skipCursor) : Long.MAX_VALUE;
     }
 
     @Override
     public ByteBuffer provide20MsAudio()
     {
-        return ByteBuffer.wrap(lastFrame.getData());
+        FRAMES_SENT.increment();
+        return sendBuffer.flip();
+    }
+
+    /**
+     * @return the number of opus frames handed to JDA by all handlers
+     */
+    public static long getFramesSent()
+    {
+        return FRAMES_SENT.sum();
     }
 
     @Override
@@ -0,0 +1,135 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioConfiguration.ResamplingQuality;
+import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigException;
+import java.util.Arrays;
+import java.util.stream.Collectors;
+
+/**
+ * Lavaplayer engine settings, chosen from a named preset in the {@code player}
+ * config block, with any individual value optionally overridden.
+ */
+public class EngineProfile
+{
+    public enum Preset
+    {
+        // lavaplayer's own defaults
+        DEFAULT("default",           5000, 10, ResamplingQuality.LOW,    10000, 60000, 10),
+        LOW_CPU("low-cpu",           3000,  4, ResamplingQuality.LOW,    10000, 30000,  4),
+        BALANCED("balanced",         5000,  7, ResamplingQuality.MEDIUM, 10000, 60000,  8),
+        HIGH_QUALITY("high-quality", 10000, 10, ResamplingQuality.HIGH,  15000, 60000, 10);
+
+        private final String configName;
+        private final int frameBufferDuration, opusEncodingQuality, itemLoaderThreads;
+        private final ResamplingQuality resamplingQuality;
+        private final long trackStuckThreshold, playerCleanupThreshold;
+
+        Preset(String configName, int frameBufferDuration, int opusEncodingQuality, ResamplingQuality resamplingQuality,
+                long trackStuckThreshold, long playerCleanupThreshold, int itemLoaderThreads)
+        {
+            this.configName = configName;
+            this.frameBufferDuration = frameBufferDuration;
+            this.opusEncodingQuality = opusEncodingQuality;
+            this.resamplingQuality = resamplingQuality;
+            this.trackStuckThreshold = trackStuckThreshold;
+            this.playerCleanupThreshold = playerCleanupThreshold;
+            this.itemLoaderThreads = itemLoaderThreads;
+        }
+
+        public String getConfigName()
+        {
+            return configName;
+        }
+
+        public static Preset fromConfigName(String name)
+        {
+            for(Preset preset: values())
+                if(preset.configName.equalsIgnoreCase(name))
+                    return preset;
+            return null;
+        }
+    }
+
+    private final Preset preset;
+    private final int frameBufferDuration, opusEncodingQuality, itemLoaderThreads;
+    private final ResamplingQuality resamplingQuality;
+    private final long trackStuckThreshold, playerCleanupThreshold;
+
+    private EngineProfile(Preset preset, int frameBufferDuration, int opusEncodingQuality, ResamplingQuality resamplingQuality,
+            long trackStuckThreshold, long playerCleanupThreshold, int itemLoaderThreads)
+    {
+        this.preset = preset;
+        this.frameBufferDuration = frameBufferDuration;
+        this.opusEncodingQuality = opusEncodingQuality;
+        this.resamplingQuality = resamplingQuality;
+        this.trackStuckThreshold = trackStuckThreshold;
+        this.playerCleanupThreshold = playerCleanupThreshold;
+        this.itemLoaderThreads = itemLoaderThreads;
+    }
+
+    /**
+     * Reads the profile from the {@code player} config block
+     *
+     * @param config the player config block
+     * @return the profile
+     * @throws ConfigException if the preset or any override is invalid
+     */
+    public static EngineProfile fromConfig(Config config)
+    {
+        Preset preset = Preset.fromConfigName(config.getString("preset"));
+        if(preset == null)
+            throw new ConfigException.BadValue(config.origin(), "preset", "Valid presets are: "
+                    + Arrays.stream(Preset.values()).map(Preset::getConfigName).collect(Collectors.joining(", ")));
+        ResamplingQuality resampling = preset.resamplingQuality;
+        if(config.hasPath("resamplingquality"))
+        {
+            try
+            {
+                resampling = ResamplingQuality.valueOf(config.getString("resamplingquality").toUpperCase());
+            }
+            catch(IllegalArgumentException e)
+            {
+                throw new ConfigException.BadValue(config.origin(), "resamplingquality", "Valid values are: LOW, MEDIUM, HIGH");
+            }
+        }
+        int opusQuality = config.hasPath("opusquality") ? config.getInt("opusquality") : preset.opusEncodingQuality;
+        if(opusQuality < 0 || opusQuality > 10)
+            throw new ConfigException.BadValue(config.origin(), "opusquality", "Must be between 0 and 10");
+        return new EngineProfile(preset,
+                config.hasPath("framebuffer")     ? config.getInt("framebuffer")      : preset.frameBufferDuration,
+                opusQuality,
+                resampling,
+                config.hasPath("trackstuck")      ? config.getLong("trackstuck")      : preset.trackStuckThreshold,
+                config.hasPath("playercleanup")   ? config.getLong("playercleanup")   : preset.playerCleanupThreshold,
+                config.hasPath("loaderthreads")   ? config.getInt("loaderthreads")    : preset.itemLoaderThreads);
+    }
+
+    public void apply(DefaultAudioPlayerManager manager)
+    {
+        manager.setFrameBufferDuration(frameBufferDuration);
+        manager.getConfiguration().setOpusEncodingQuality(opusEncodingQuality);
+        manager.getConfiguration().setResamplingQuality(resamplingQuality);
+        manager.setTrackStuckThreshold(trackStuckThreshold);
+        manager.setPlayerCleanupThreshold(playerCleanupThreshold);
+        manager.setItemLoaderThreadPoolSize(itemLoaderThreads);
+    }
+
+    public Preset getPreset()
+    {
+        return preset;
+    }
+
+    @Override
+    public String toString()
+    {
+        return preset.getConfigName()
+                + " (framebuffer=" + frameBufferDuration
+                + ", opusquality=" + opusEncodingQuality
+                + ", resamplingquality=" + resamplingQuality
+                + ", trackstuck=" + trackStuckThreshold
+                + ", playercleanup=" + playerCleanupThreshold
+                + ", loaderthreads=" + itemLoaderThreads + ")";
+    }
+}
@@ -0,0 +1,349 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.jagrosh.jmusicbot.playlist.PlaylistLoader.Playlist;
+import com.jagrosh.jmusicbot.playlist.PlaylistLoader.PlaylistLoadError;
+import com.sedmelluq.discord.lavaplayer.player.AudioPlayerManager;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BiConsumer;
+
+/**
+ * A playlist that is queued a few tracks at a time. Only the next few of its
+ * tracks are in the queue, and more are loaded as the queue plays them, so a
+ * long playlist starts playing once its first item has loaded and the queue
+ * only holds the look-ahead.
+ */
+public class LazyPlaylist
+{
+    /**
+     * Where the tracks of a lazy playlist come from
+     */
+    public interface Source
+    {
+        /**
+         * @return the number of items
+         */
+        int size();
+
+        /**
+         * Loads an item, on any thread
+         *
+         * @param index the item
+         * @param loaded given the item's tracks, which may be none, and the
+         *        reason if it gave none because it failed to load
+         */
+        void load(int index, BiConsumer<List<AudioTrack>, PlaylistLoadError> loaded);
+
+        /**
+         * @return false while more items may still be added to the source
+         */
+        default boolean isComplete()
+        {
+            return true;
+        }
+
+        /**
+         * @return a source over tracks that have already been loaded, one item per track
+         */
+        static Source of(List<AudioTrack> tracks)
+        {
+            return new Tracks(tracks, true);
+        }
+
+        /**
+         * @return a source over the lines of a playlist from the Playlists folder
+         */
+        static Source of(Playlist playlist, AudioPlayerManager manager)
+        {
+            // one key for the whole playlist, so its items load one at a time and in order
+            Object orderingKey = new Object();
+            return new Source()
+            {
+                @Override
+                public int size()
+                {
+                    return playlist.getItems().size();
+                }
+
+                @Override
+                public void load(int index, BiConsumer<List<AudioTrack>, PlaylistLoadError> loaded)
+                {
+                    playlist.loadItem(manager, orderingKey, index, loaded);
+                }
+            };
+        }
+    }
+
+    /**
+     * A source over loaded tracks, one item per track, that more tracks can be
+     * added to while the playlist plays
+     */
+    public static class Tracks implements Source
+    {
+        private final List<AudioTrack> tracks;
+        private boolean complete;
+
+        /**
+         * @param complete false if more tracks will be added with {@link #add(List, boolean)}
+         */
+        public Tracks(List<AudioTrack> tracks, boolean complete)
+        {
+            this.tracks = new ArrayList<>(tracks);
+            this.complete = complete;
+        }
+
+        @Override
+        public synchronized int size()
+        {
+            return tracks.size();
+        }
+
+        @Override
+        public void load(int index, BiConsumer<List<AudioTrack>, PlaylistLoadError> loaded)
+        {
+            AudioTrack track;
+            synchronized(this)
+            {
+                track = tracks.get(index);
+            }
+            loaded.accept(Collections.singletonList(track), null);
+        }
+
+        @Override
+        public synchronized boolean isComplete()
+        {
+            return complete;
+        }
+
+        /**
+         * Adds tracks after the ones already in the source
+         *
+         * @param complete true if no more tracks will be added after these
+         */
+        public synchronized void add(List<AudioTrack> more, boolean complete)
+        {
+            tracks.addAll(more);
+            this.complete = complete;
+        }
+    }
+
+    /**
+     * Told once a lazy playlist stops loading by itself, because every item
+     * has been loaded or because the queue quota stopped it; not told when
+     * the playlist is stopped with {@link #stop()}
+     */
+    public interface Report
+    {
+        void finished(LazyPlaylist playlist);
+    }
+
+    private final String name;
+    private final Source source;
+    private final RequestMetadata rm;
+    private final int lookahead;
+    private final Report report;
+    // the tracks this playlist has put in the queue that may still be there
+    private final List<QueuedTrack> pending = new ArrayList<>();
+    private int next = 0;
+    private boolean loading = false, stopped = false;
+    // fill() runs one pass at a time; an item that loads during a pass asks for another
+    private boolean filling = false, again = false;
+    // what has happened to the items loaded so far
+    private int added = 0, duplicates = 0, omitted = 0;
+    private QueueQuota.Limit limit = null;
+    private final List<PlaylistLoadError> errors = new ArrayList<>();
+    private boolean reported = false;
+
+    /**
+     * @param name the playlist's name, or null
+     * @param rm the request that queued the playlist
+     * @param lookahead how many of its tracks to keep in the queue
+     * @param report told once the playlist has stopped loading, or null
+     */
+    public LazyPlaylist(String name, Source source, RequestMetadata rm, int lookahead, Report report)
+    {
+        this.name = name;
+        this.source = source;
+        this.rm = rm;
+        this.lookahead = Math.max(1, lookahead);
+        this.report = report;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public RequestMetadata getRequestMetadata()
+    {
+        return rm;
+    }
+
+    public Source getSource()
+    {
+        return source;
+    }
+
+    /**
+     * @return the number of tracks added to the queue so far
+     */
+    public synchronized int getAdded()
+    {
+        return added;
+    }
+
+    /**
+     * @return the number of tracks left out because they were already in the queue
+     */
+    public synchronized int getDuplicates()
+    {
+        return duplicates;
+    }
+
+    /**
+     * @return the number of tracks left out because they were longer than the allowed maximum
+     */
+    public synchronized int getOmitted()
+    {
+        return omitted;
+    }
+
+    /**
+     * @return the queue quota limit that stopped the playlist, or null
+     */
+    public synchronized QueueQuota.Limit getLimit()
+    {
+        return limit;
+    }
+
+    /**
+     * @return the items that failed to load, in the order they were loaded
+     */
+    public synchronized List<PlaylistLoadError> getErrors()
+    {
+        return new ArrayList<>(errors);
+    }
+
+    /**
+     * @return the number of items that have not been loaded yet
+     */
+    public synchronized int getRemaining()
+    {
+        return stopped ? 0 : source.size() - next;
+    }
+
+    /**
+     * @return true once every item has been queued and the source is complete,
+     *         or the playlist was stopped
+     */
+    public synchronized boolean isFinished()
+    {
+        return stopped || (next >= source.size() && !loading && source.isComplete());
+    }
+
+    /**
+     * Stops loading the playlist; tracks it has already queued stay there
+     */
+    public synchronized void stop()
+    {
+        stopped = true;
+    }
+
+    /**
+     * Loads items into the handler's queue until the look-ahead is queued or
+     * there is nothing left to load
+     */
+    void fill(AudioHandler handler)
+    {
+        synchronized(this)
+        {
+            if(filling)
+            {
+                again = true;
+                return;
+            }
+            filling = true;
+        }
+        try
+        {
+            while(true)
+            {
+                int index;
+                synchronized(this)
+                {
+                    again = false;
+                    pending.removeIf(qtrack -> !handler.isQueued(qtrack));
+                    if(stopped || loading || next >= source.size() || pending.size() >= lookahead)
+                    {
+                        filling = false;
+                        return;
+                    }
+                    loading = true;
+                    index = next++;
+                }
+                source.load(index, (tracks, error) -> handler.queueLazy(this, tracks, error));
+                synchronized(this)
+                {
+                    // the item is still loading elsewhere; it calls fill() again when it is done
+                    if(!again)
+                    {
+                        filling = false;
+                        return;
+                    }
+                }
+            }
+        }
+        catch(RuntimeException ex)
+        {
+            synchronized(this)
+            {
+                filling = false;
+                loading = false;
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Called by the handler once the tracks of the item being loaded are queued
+     *
+     * @param queued the tracks offered to the queue
+     * @param result what the queue did with them, or null if none were offered
+     * @param omitted the number of the item's tracks that were too long to offer
+     * @param error why the item failed to load, or null
+     */
+    synchronized void loaded(List<QueuedTrack> queued, QueueQuota.Result result, int omitted, PlaylistLoadError error)
+    {
+        pending.addAll(queued);
+        loading = false;
+        this.omitted += omitted;
+        if(error != null)
+            errors.add(error);
+        if(result == null)
+            return;
+        added += result.getAdded();
+        duplicates += result.getDuplicates();
+        if(result.getLimit() != null)
+        {
+            limit = result.getLimit();
+            stopped = true;
+        }
+    }
+
+    /**
+     * Called by the handler once it has dropped the finished playlist; tells
+     * the report, only the first time
+     */
+    void finish()
+    {
+        synchronized(this)
+        {
+            if(reported || report == null)
+                return;
+            reported = true;
+        }
+        report.finished(this);
+    }
+}
@@ -0,0 +1,314 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Remembers what links and searches loaded, so that loading the same thing
+ * again, in any guild, does not go back to the source. Results are kept in
+ * lavaplayer's binary track format and decoded into new tracks on every hit.
+ * <p>
+ * The cache is a bounded LRU keyed by the normalized identifier. Search
+ * results and each source have their own time to live, live streams are never
+ * kept, and the cache can optionally be persisted to disk.
+ */
+public class LoadCache
+{
+    private final static Logger LOGGER = LoggerFactory.getLogger(LoadCache.class);
+    private final static Pattern SEARCH = Pattern.compile("(?i)^([a-z]+search):\\s*(.*)$", Pattern.DOTALL);
+
+    private final PlayerManager manager;
+    private final int maxSize;
+    private final long ttlMillis, searchTtlMillis;
+    private final Map<String, Long> sourceTtlMillis;
+    private final Path file;
+    private final Map<String, Entry> cache;
+
+    /**
+     * @param manager         the manager to encode and decode tracks with
+     * @param maxSize         maximum number of results to keep; 0 disables the cache
+     * @param ttlMillis       how long loaded links are kept
+     * @param searchTtlMillis how long search results are kept
+     * @param sourceTtlMillis how long links are kept by source name, overriding ttlMillis
+     * @param file            file to persist the cache to, or null to keep it in memory only
+     */
+    public LoadCache(PlayerManager manager, int maxSize, long ttlMillis, long searchTtlMillis, Map<String, Long> sourceTtlMillis, Path file)
+    {
+        this.manager = manager;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttlMillis;
+        this.searchTtlMillis = searchTtlMillis;
+        this.sourceTtlMillis = sourceTtlMillis;
+        this.file = file;
+        this.cache = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > LoadCache.this.maxSize;
+            }
+        };
+    }
+
+    /**
+     * Turns an identifier into the key it is cached under: surrounding angle
+     * brackets and whitespace are dropped, search queries are lowercased with
+     * their whitespace collapsed, and the scheme and host of links are
+     * lowercased
+     */
+    public static String normalize(String identifier)
+    {
+        String id = identifier.trim();
+        if(id.startsWith("<") && id.endsWith(">"))
+            id = id.substring(1, id.length() - 1).trim();
+        Matcher search = SEARCH.matcher(id);
+        if(search.matches())
+            return search.group(1).toLowerCase(Locale.ROOT) + ":" + search.group(2).trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+        if(!id.contains("://"))
+            return id;
+        try
+        {
+            URI uri = new URI(id);
+            if(uri.getScheme() == null || uri.getRawAuthority() == null)
+                return id;
+            return new URI(uri.getScheme().toLowerCase(Locale.ROOT), uri.getRawAuthority().toLowerCase(Locale.ROOT), null, null, null)
+                    + (uri.getRawPath() == null ? "" : uri.getRawPath())
+                    + (uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery());
+        }
+        catch(URISyntaxException e)
+        {
+            return id;
+        }
+    }
+
+    public int size()
+    {
+        synchronized(cache)
+        {
+            return cache.size();
+        }
+    }
+
+    /**
+     * Hands a cached result to the handler as new tracks
+     *
+     * @param key the normalized identifier
+     * @return true if the result was cached and handed over, false if the
+     *         identifier must be loaded from its source
+     */
+    public boolean deliver(String key, AudioLoadResultHandler handler)
+    {
+        Entry entry;
+        synchronized(cache)
+        {
+            entry = cache.get(key);
+            if(entry != null && entry.expires < System.currentTimeMillis())
+            {
+                cache.remove(key);
+                entry = null;
+            }
+        }
+        if(entry == null)
+            return false;
+        List<AudioTrack> tracks = new ArrayList<>(entry.tracks.size());
+        for(byte[] data: entry.tracks)
+        {
+            try
+            {
+                AudioTrack track = manager.decodeTrack(data);
+                if(track != null)
+                    tracks.add(track);
+            }
+            catch(IOException e)
+            {
+                LOGGER.debug("Dropping cached result for {}: {}", key, e.getMessage());
+            }
+        }
+        if(tracks.size() != entry.tracks.size() || tracks.isEmpty())
+        {
+            synchronized(cache)
+            {
+                cache.remove(key, entry);
+            }
+            return false;
+        }
+        if(entry.playlist)
+        {
+            AudioTrack selected = entry.selected >= 0 && entry.selected < tracks.size() ? tracks.get(entry.selected) : null;
+            handler.playlistLoaded(new BasicAudioPlaylist(entry.name, tracks, selected, entry.search));
+        }
+        else
+            handler.trackLoaded(tracks.get(0));
+        return true;
+    }
+
+    /**
+     * Caches a loaded track, if its source is cached
+     *
+     * @param key the normalized identifier
+     */
+    public void put(String key, AudioTrack track)
+    {
+        put(key, Collections.singletonList(track), false, null, -1, false);
+    }
+
+    /**
+     * Caches a loaded playlist or search result, if its source is cached
+     *
+     * @param key the normalized identifier
+     */
+    public void put(String key, AudioPlaylist playlist)
+    {
+        List<AudioTrack> tracks = playlist.getTracks();
+        put(key, tracks, true, playlist.getName(), playlist.getSelectedTrack() == null ? -1 : tracks.indexOf(playlist.getSelectedTrack()),
+                playlist.isSearchResult());
+    }
+
+    private void put(String key, List<AudioTrack> tracks, boolean playlist, String name, int selected, boolean search)
+    {
+        if(maxSize <= 0 || tracks.isEmpty())
+            return;
+        long ttl = search || SEARCH.matcher(key).matches() ? searchTtlMillis : ttlFor(tracks.get(0));
+        if(ttl <= 0)
+            return;
+        List<byte[]> encoded = new ArrayList<>(tracks.size());
+        for(AudioTrack track: tracks)
+        {
+            if(track.getInfo().isStream)
+                return;
+            try
+            {
+                encoded.add(manager.encodeTrack(track));
+            }
+            catch(IOException e)
+            {
+                return;
+            }
+        }
+        Entry entry = new Entry(encoded, playlist, name, selected, search, System.currentTimeMillis() + ttl);
+        synchronized(cache)
+        {
+            cache.put(key, entry);
+        }
+    }
+
+    private long ttlFor(AudioTrack track)
+    {
+        if(track.getSourceManager() == null)
+            return 0;
+        Long ttl = sourceTtlMillis.get(track.getSourceManager().getSourceName());
+        return ttl == null ? ttlMillis : ttl;
+    }
+
+    /**
+     * Loads the persisted cache, if persistence is enabled. Expired entries are dropped.
+     */
+    public void loadCache()
+    {
+        if(file == null || maxSize <= 0)
+            return;
+        try
+        {
+            JSONObject obj = new JSONObject(new String(Files.readAllBytes(file)));
+            long now = System.currentTimeMillis();
+            synchronized(cache)
+            {
+                for(String key: obj.keySet())
+                {
+                    JSONObject o = obj.getJSONObject(key);
+                    if(o.getLong("expires") < now)
+                        continue;
+                    JSONArray array = o.getJSONArray("tracks");
+                    List<byte[]> tracks = new ArrayList<>(array.length());
+                    for(int i = 0; i < array.length(); i++)
+                        tracks.add(Base64.getDecoder().decode(array.getString(i)));
+                    cache.put(key, new Entry(tracks, o.getBoolean("playlist"), o.optString("name", null),
+                            o.optInt("selected", -1), o.optBoolean("search"), o.getLong("expires")));
+                }
+            }
+            LOGGER.info("Loaded {} cached load results from {}", size(), file.toAbsolutePath());
+        }
+        catch(NoSuchFileException ignore)
+        {
+            // nothing has been persisted yet
+        }
+        catch(IOException | JSONException | IllegalArgumentException e)
+        {
+            LOGGER.warn("Failed to load the load cache: " + e);
+        }
+    }
+
+    /**
+     * Writes the cache to disk, if persistence is enabled.
+     */
+    public void saveCache()
+    {
+        if(file == null || maxSize <= 0)
+            return;
+        JSONObject obj = new JSONObject();
+        synchronized(cache)
+        {
+            cache.forEach((key, entry) ->
+            {
+                JSONArray tracks = new JSONArray();
+                entry.tracks.forEach(data -> tracks.put(Base64.getEncoder().encodeToString(data)));
+                obj.put(key, new JSONObject()
+                        .put("expires", entry.expires)
+                        .put("playlist", entry.playlist)
+                        .put("name", entry.name)
+                        .put("selected", entry.selected)
+                        .put("search", entry.search)
+                        .put("tracks", tracks));
+            });
+        }
+        try
+        {
+            Files.write(file, obj.toString().getBytes());
+        }
+        catch(IOException e)
+        {
+            LOGGER.warn("Failed to write the load cache: " + e);
+        }
+    }
+
+    private static class Entry
+    {
+        private final List<byte[]> tracks;
+        private final boolean playlist, search;
+        private final String name;
+        private final int selected;
+        private final long expires;
+
+        private Entry(List<byte[]> tracks, boolean playlist, String name, int selected, boolean search, long expires)
+        {
+            this.tracks = tracks;
+            this.playlist = playlist;
+            this.name = name;
+            this.selected = selected;
+            this.search = search;
+            this.expires = expires;
+        }
+    }
+}
@@ -77,6 +77,11 @@ public class NowplayingHandler
                 continue;
             }
             AudioHandler handler = (AudioHandler)guild.getAudioManager().getSendingHandler();
+            if(handler==null)
+            {
+                toRemove.add(guildId);
+                continue;
+            }
             net.dv8tion.jda.api.utils.messages.MessageCreateData msg = handler.getNowPlaying(bot.getJDA());
             if(msg==null)
             {
@@ -19,6 +19,7 @@ import com.dunctebot.sourcemanagers.DuncteBotSources;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 import com.sedmelluq.discord.lavaplayer.container.MediaContainerRegistry;
+import com.sedmelluq.discord.lavaplayer.player.AudioLoadResultHandler;
 import com.sedmelluq.discord.lavaplayer.player.AudioPlayer;
 import com.sedmelluq.discord.lavaplayer.player.DefaultAudioPlayerManager;
 import com.sedmelluq.discord.lavaplayer.source.AudioSourceManagers;
@@ -30,15 +31,40 @@ import com.sedmelluq.discord.lavaplayer.source.nico.NicoAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.soundcloud.SoundCloudAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.twitch.TwitchStreamAudioSourceManager;
 import com.sedmelluq.discord.lavaplayer.source.vimeo.VimeoAudioSourceManager;
+import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageInput;
+import com.sedmelluq.discord.lavaplayer.tools.io.MessageOutput;
+import com.sedmelluq.discord.lavaplayer.track.AudioItem;
+import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.AudioReference;
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import com.sedmelluq.discord.lavaplayer.track.BasicAudioPlaylist;
+import com.sedmelluq.discord.lavaplayer.track.DecodedTrackHolder;
 import dev.lavalink.youtube.YoutubeAudioSourceManager;
 import dev.lavalink.youtube.clients.Web;
 import dev.lavalink.youtube.clients.TvHtml5Embedded;
+import net.dv8tion.jda.api.audio.hooks.ConnectionStatus;
 import net.dv8tion.jda.api.entities.Guild;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -47,7 +73,25 @@ import java.nio.file.NoSuchFileException;
 public class PlayerManager extends DefaultAudioPlayerManager
 {
     private final static Logger LOGGER = LoggerFactory.getLogger(PlayerManager.class);
+    private final static String SPONSORBLOCK_CACHE_FILE = "sponsorblock.json";
+    private final static String QUEUE_JOURNAL_FILE = "queues.journal";
+    private final static String LOAD_CACHE_FILE = "loadcache.json";
+    private final static Pattern YOUTUBE_PLAYLIST = Pattern.compile("^(?:https?://)?(?:www\\.|m\\.|music\\.)?youtube\\.com/playlist\\?(?:.*&)?list=[\\w-]+",
+            Pattern.CASE_INSENSITIVE);
     private final Bot bot;
+    private final Map<Long, AudioHandler> handlers = new ConcurrentHashMap<>();
+    private final Deque<AudioPlayer> playerPool = new ArrayDeque<>();
+    // the last load submitted for each ordering key, so cached results are
+    // handed over no earlier than the loads queued before them
+    private final Map<Object, CompletableFuture<Void>> orderedLoads = new ConcurrentHashMap<>();
+    // normalized identifier -> the load from the source in progress for it
+    private final Map<String, SharedLoad> sharedLoads = new ConcurrentHashMap<>();
+    private SponsorBlockClient sponsorBlock;
+    private LoadCache loadCache;
+    private QueueJournal journal;
+    // loads only the first page of YouTube playlists; it is not registered, so
+    // nothing else loads through it and its tracks are handed out re-decoded
+    private YoutubeAudioSourceManager firstPageSource;
 
     public PlayerManager(Bot bot)
     {
@@ -56,10 +100,38 @@ public class PlayerManager extends DefaultAudioPlayerManager
 
     public void init()
     {
+        bot.getConfig().getEngineProfile().apply(this);
+        LOGGER.info("Using player profile {}", bot.getConfig().getEngineProfile());
+
+        sponsorBlock = new SponsorBlockClient(bot.getConfig().getSponsorBlockCacheSize(),
+                TimeUnit.HOURS.toMillis(bot.getConfig().getSponsorBlockCacheHours()),
+                bot.getConfig().getSponsorBlockPersist() ? OtherUtil.getPath(SPONSORBLOCK_CACHE_FILE) : null);
+        sponsorBlock.loadCache();
+        loadCache = new LoadCache(this, bot.getConfig().getLoadCacheSize(),
+                TimeUnit.MINUTES.toMillis(bot.getConfig().getLoadCacheMinutes()),
+                TimeUnit.MINUTES.toMillis(bot.getConfig().getLoadCacheSearchMinutes()),
+                bot.getConfig().getLoadCacheSourceMinutes().entrySet().stream()
+                        .collect(Collectors.toMap(Map.Entry::getKey, e -> TimeUnit.MINUTES.toMillis(e.getValue()))),
+                bot.getConfig().getLoadCachePersist() ? OtherUtil.getPath(LOAD_CACHE_FILE) : null);
+        loadCache.loadCache();
+        if(bot.getConfig().getPlayerIdleTimeout() > 0)
+            bot.getThreadpool().scheduleWithFixedDelay(() -> reclaimIdleHandlers(), 1, 1, TimeUnit.MINUTES);
+        if(bot.getConfig().getQueuePersist())
+        {
+            journal = new QueueJournal(this, OtherUtil.getPath(QUEUE_JOURNAL_FILE));
+            bot.getThreadpool().scheduleWithFixedDelay(() -> journal.flush(), 5, 5, TimeUnit.SECONDS);
+        }
+
         TransformativeAudioSourceManager.createTransforms(bot.getConfig().getTransforms()).forEach(t -> registerSourceManager(t));
 
-        YoutubeAudioSourceManager yt = setupYoutubeAudioSourceManager();
+        YoutubeAudioSourceManager yt = setupYoutubeAudioSourceManager(false);
         registerSourceManager(yt);
+        if(bot.getConfig().getIncrementalYTPlaylists() && bot.getConfig().getPlaylistLookahead() > 0)
+        {
+            // the registered manager runs the OAuth2 device flow if there is no token yet
+            firstPageSource = setupYoutubeAudioSourceManager(true);
+            firstPageSource.setPlaylistPageCount(1);
+        }
 
         registerSourceManager(SoundCloudAudioSourceManager.createDefault());
         registerSourceManager(new BandcampAudioSourceManager());
@@ -75,7 +147,11 @@ public class PlayerManager extends DefaultAudioPlayerManager
         DuncteBotSources.registerAll(this, "en-US");
     }
 
-    private YoutubeAudioSourceManager setupYoutubeAudioSourceManager()
+    /**
+     * @param skipOauth2Initialization true to use a stored OAuth2 token without
+     *        starting the device flow when there is none
+     */
+    private YoutubeAudioSourceManager setupYoutubeAudioSourceManager(boolean skipOauth2Initialization)
     {
         YoutubeAudioSourceManager yt = new YoutubeAudioSourceManager(true, new TvHtml5Embedded(), new Web());
         yt.setPlaylistPageCount(bot.getConfig().getMaxYTPlaylistPages());
@@ -99,7 +175,7 @@ public class PlayerManager extends DefaultAudioPlayerManager
             LOGGER.debug("Using YouTube OAuth2 refresh token {}", token);
             try
             {
-                yt.useOauth2(token, false);
+                yt.useOauth2(token, skipOauth2Initialization);
             }
             catch (Exception e)
             {
@@ -114,24 +190,506 @@ public class PlayerManager extends DefaultAudioPlayerManager
         return bot;
     }
 
+    public SponsorBlockClient getSponsorBlockClient()
+    {
+        return sponsorBlock;
+    }
+
+    public LoadCache getLoadCache()
+    {
+        return loadCache;
+    }
+
+    /**
+     * Loads an item, from the {@link LoadCache} if it has been loaded before.
+     * Concurrent loads of the same item, from any guild, share one load from
+     * the source. Cached and shared results are handed to the handler in the
+     * same order as the loads from the source, by ordering key.
+     */
+    @Override
+    public Future<Void> loadItemOrdered(Object orderingKey, AudioReference reference, AudioLoadResultHandler handler)
+    {
+        if(loadCache == null || reference.identifier == null)
+            return super.loadItemOrdered(orderingKey, reference, handler);
+        String key = LoadCache.normalize(reference.identifier);
+        return ordered(orderingKey, done -> load(orderingKey, reference, key, handler, done));
+    }
+
+    /**
+     * Starts a load once the loads submitted before it with the same ordering
+     * key have finished. The load completes the future it is given when its
+     * result has been handed over.
+     */
+    private CompletableFuture<Void> ordered(Object orderingKey, Consumer<CompletableFuture<Void>> load)
+    {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        CompletableFuture<Void> previous = orderedLoads.put(orderingKey, done);
+        done.whenComplete((v, ex) -> orderedLoads.remove(orderingKey, done));
+        if(previous == null || previous.isDone())
+            load.accept(done);
+        else
+            previous.whenComplete((v, ex) -> load.accept(done));
+        return done;
+    }
+
+    private void load(Object orderingKey, AudioReference reference, String key, AudioLoadResultHandler handler, CompletableFuture<Void> done)
+    {
+        while(true)
+        {
+            try
+            {
+                if(loadCache.deliver(key, handler))
+                {
+                    done.complete(null);
+                    return;
+                }
+            }
+            catch(RuntimeException ex)
+            {
+                done.complete(null);
+                throw ex;
+            }
+            SharedLoad shared = new SharedLoad(key);
+            shared.join(handler, done);
+            SharedLoad existing = sharedLoads.putIfAbsent(key, shared);
+            if(existing == null)
+            {
+                super.loadItemOrdered(orderingKey, reference, shared);
+                return;
+            }
+            if(existing.join(handler, done))
+                return;
+            // it finished in the meantime, so its result is cached now or must be loaded again
+        }
+    }
+
+    /**
+     * Loads a YouTube playlist link starting with its first page, if incremental
+     * YouTube playlists are enabled. The first page is handed to the handler as
+     * soon as it has loaded, in order with the other loads of the ordering key.
+     * The whole playlist is then loaded in the background, and the tracks after
+     * the first page are handed to the consumer; it gets an empty list if there
+     * are none or they failed to load. If the first page fails to load, the
+     * playlist is loaded whole the normal way instead.
+     *
+     * @return false if the identifier is not loaded this way, in which case
+     *         nothing has been loaded
+     */
+    public boolean loadPlaylistIncrementally(Object orderingKey, String identifier, AudioLoadResultHandler firstPage,
+            Consumer<List<AudioTrack>> laterPages)
+    {
+        if(firstPageSource == null || !YOUTUBE_PLAYLIST.matcher(identifier).find())
+            return false;
+        // the load blocks on HTTP, so it runs on the bot's thread pool rather than the common pool
+        ordered(orderingKey, done -> CompletableFuture.runAsync(() ->
+        {
+            try
+            {
+                loadFirstPage(orderingKey, identifier, firstPage, laterPages);
+            }
+            catch(RuntimeException ex)
+            {
+                LOGGER.warn("Failed to load {} incrementally", identifier, ex);
+            }
+            finally
+            {
+                done.complete(null);
+            }
+        }, bot.getThreadpool()));
+        return true;
+    }
+
+    private void loadFirstPage(Object orderingKey, String identifier, AudioLoadResultHandler firstPage, Consumer<List<AudioTrack>> laterPages)
+    {
+        // a playlist that has been loaded before is in the cache whole
+        if(loadCache.deliver(LoadCache.normalize(identifier), firstPage))
+        {
+            laterPages.accept(Collections.emptyList());
+            return;
+        }
+        AudioItem item;
+        try
+        {
+            item = firstPageSource.loadItem(this, new AudioReference(identifier, null));
+        }
+        catch(RuntimeException ex)
+        {
+            LOGGER.warn("Failed to load the first page of {}, loading it whole: {}", identifier, ex.getMessage());
+            loadWhole(orderingKey, identifier, firstPage, laterPages);
+            return;
+        }
+        if(!(item instanceof AudioPlaylist))
+        {
+            AudioTrack track = item instanceof AudioTrack ? redecode((AudioTrack) item) : null;
+            if(track == null)
+                firstPage.noMatches();
+            else
+                firstPage.trackLoaded(track);
+            laterPages.accept(Collections.emptyList());
+            return;
+        }
+        AudioPlaylist page = (AudioPlaylist) item;
+        List<AudioTrack> tracks = new ArrayList<>(page.getTracks().size());
+        for(AudioTrack track: page.getTracks())
+        {
+            AudioTrack redecoded = redecode(track);
+            if(redecoded != null)
+                tracks.add(redecoded);
+        }
+        firstPage.playlistLoaded(new BasicAudioPlaylist(page.getName(), tracks, null, false));
+        int loaded = page.getTracks().size();
+        // the rest goes through the cache and shared loads like any other load, so the whole playlist is cached
+        loadItemOrdered(new Object(), new AudioReference(identifier, null), new AudioLoadResultHandler()
+        {
+            @Override
+            public void trackLoaded(AudioTrack track)
+            {
+                laterPages.accept(Collections.emptyList());
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist)
+            {
+                List<AudioTrack> all = playlist.getTracks();
+                laterPages.accept(all.size() > loaded ? new ArrayList<>(all.subList(loaded, all.size())) : Collections.emptyList());
+            }
+
+            @Override
+            public void noMatches()
+            {
+                laterPages.accept(Collections.emptyList());
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception)
+            {
+                LOGGER.warn("Failed to load the rest of {}: {}", identifier, exception.getMessage());
+                laterPages.accept(Collections.emptyList());
+            }
+        });
+    }
+
+    /**
+     * Loads an incrementally loaded playlist the normal way, after the load
+     * that is running now. The consumer only gets its empty list once the
+     * handler has had the result, so there are never pages after the last one.
+     */
+    private void loadWhole(Object orderingKey, String identifier, AudioLoadResultHandler handler, Consumer<List<AudioTrack>> laterPages)
+    {
+        loadItemOrdered(orderingKey, new AudioReference(identifier, null), new AudioLoadResultHandler()
+        {
+            @Override
+            public void trackLoaded(AudioTrack track)
+            {
+                handler.trackLoaded(track);
+                laterPages.accept(Collections.emptyList());
+            }
+
+            @Override
+            public void playlistLoaded(AudioPlaylist playlist)
+            {
+                handler.playlistLoaded(playlist);
+                laterPages.accept(Collections.emptyList());
+            }
+
+            @Override
+            public void noMatches()
+            {
+                handler.noMatches();
+                laterPages.accept(Collections.emptyList());
+            }
+
+            @Override
+            public void loadFailed(FriendlyException exception)
+            {
+                handler.loadFailed(exception);
+                laterPages.accept(Collections.emptyList());
+            }
+        });
+    }
+
+    /**
+     * @return a copy of the track that belongs to the registered source of its kind, or null if it cannot be copied
+     */
+    private AudioTrack redecode(AudioTrack track)
+    {
+        try
+        {
+            return decodeTrack(encodeTrack(track));
+        }
+        catch(IOException e)
+        {
+            LOGGER.debug("Dropping {}: {}", track.getIdentifier(), e.getMessage());
+            return null;
+        }
+    }
+
+    @Override
+    public void shutdown()
+    {
+        super.shutdown();
+        if(firstPageSource != null)
+            firstPageSource.shutdown();
+    }
+
+    /**
+     * @return the queue journal, or null if queues are not persisted
+     */
+    public QueueJournal getQueueJournal()
+    {
+        return journal;
+    }
+
+    /**
+     * @return the handlers of all guilds that have one, by guild id
+     */
+    Map<Long, AudioHandler> getHandlers()
+    {
+        return Collections.unmodifiableMap(handlers);
+    }
+
+    /**
+     * @return the track in lavaplayer's binary track format
+     */
+    public byte[] encodeTrack(AudioTrack track) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(256);
+        encodeTrack(new MessageOutput(out), track);
+        return out.toByteArray();
+    }
+
+    /**
+     * @return the track, or null if the data holds no track
+     */
+    public AudioTrack decodeTrack(byte[] data) throws IOException
+    {
+        DecodedTrackHolder holder = decodeTrack(new MessageInput(new ByteArrayInputStream(data)));
+        return holder == null ? null : holder.decodedTrack;
+    }
+
     public boolean hasHandler(Guild guild)
     {
         return guild.getAudioManager().getSendingHandler()!=null;
     }
 
-    public AudioHandler setUpHandler(Guild guild)
+    public synchronized AudioHandler setUpHandler(Guild guild)
     {
         AudioHandler handler;
         if(guild.getAudioManager().getSendingHandler()==null)
         {
-            AudioPlayer player = createPlayer();
+            AudioPlayer player = acquirePlayer();
             player.setVolume(bot.getSettingsManager().getSettings(guild).getVolume());
             handler = new AudioHandler(this, guild, player);
             player.addListener(handler);
             guild.getAudioManager().setSendingHandler(handler);
+            handlers.put(guild.getIdLong(), handler);
         }
         else
             handler = (AudioHandler) guild.getAudioManager().getSendingHandler();
+        // a command is about to use the handler, so it is not idle whatever it is doing now
+        handler.idleSince = 0;
         return handler;
     }
+
+    public int getLivePlayerCount()
+    {
+        return handlers.size();
+    }
+
+    public int getPooledPlayerCount()
+    {
+        synchronized(playerPool)
+        {
+            return playerPool.size();
+        }
+    }
+
+    /**
+     * @return a player from the pool, or a new player if the pool is empty
+     */
+    AudioPlayer acquirePlayer()
+    {
+        synchronized(playerPool)
+        {
+            AudioPlayer player = playerPool.poll();
+            if(player != null)
+                return player;
+        }
+        return createPlayer();
+    }
+
+    /**
+     * Resets a player and returns it to the pool, or destroys it if the pool is full
+     */
+    void releasePlayer(AudioPlayer player, AudioHandler handler)
+    {
+        player.removeListener(handler);
+        player.stopTrack();
+        player.setPaused(false);
+        player.setFilterFactory(null);
+        player.setVolume(100);
+        synchronized(playerPool)
+        {
+            if(playerPool.size() < bot.getConfig().getPlayerPoolSize())
+            {
+                playerPool.push(player);
+                return;
+            }
+        }
+        player.destroy();
+    }
+
+    /**
+     * Detaches handlers that have had nothing to play, and no voice connection,
+     * for longer than the configured idle timeout. Guild settings are untouched,
+     * so a new handler picks up where the old one left off.
+     */
+    private void reclaimIdleHandlers()
+    {
+        try
+        {
+            long now = System.currentTimeMillis();
+            long timeout = TimeUnit.SECONDS.toMillis(bot.getConfig().getPlayerIdleTimeout());
+            for(Map.Entry<Long, AudioHandler> entry: handlers.entrySet())
+            {
+                Guild guild = bot.getJDA().getGuildById(entry.getKey());
+                AudioHandler handler = entry.getValue();
+                if(guild != null && isBusy(guild, handler))
+                {
+                    handler.idleSince = 0;
+                    continue;
+                }
+                if(handler.idleSince == 0)
+                    handler.idleSince = now;
+                if(guild != null && now - handler.idleSince < timeout)
+                    continue;
+                synchronized(this)
+                {
+                    // re-check, a command may have started using the handler in the meantime
+                    if(guild != null && (handler.idleSince == 0 || isBusy(guild, handler)))
+                        continue;
+                    if(guild != null && guild.getAudioManager().getSendingHandler() == handler)
+                        guild.getAudioManager().setSendingHandler(null);
+                    handlers.remove(entry.getKey());
+                }
+                handler.release();
+                LOGGER.debug("Reclaimed idle player for guild {}", entry.getKey());
+            }
+        }
+        catch(Exception e)
+        {
+            LOGGER.warn("Failed to reclaim idle players", e);
+        }
+    }
+
+    /**
+     * @return true if the handler has something to play, or the guild's voice
+     *         connection is open or still being opened
+     */
+    private static boolean isBusy(Guild guild, AudioHandler handler)
+    {
+        return !handler.isIdle() || guild.getAudioManager().getConnectionStatus() != ConnectionStatus.NOT_CONNECTED;
+    }
+
+    /**
+     * A load from the source that any number of loads of the same item can
+     * join while it is in progress. The result is cached, and every handler
+     * that joined gets tracks of its own.
+     */
+    private class SharedLoad implements AudioLoadResultHandler
+    {
+        private final String key;
+        private final List<AudioLoadResultHandler> handlers = new ArrayList<>(1);
+        private final List<CompletableFuture<Void>> done = new ArrayList<>(1);
+        private boolean finished = false;
+
+        private SharedLoad(String key)
+        {
+            this.key = key;
+        }
+
+        /**
+         * @return true if the handler will get the result, false if the load has already finished
+         */
+        private synchronized boolean join(AudioLoadResultHandler handler, CompletableFuture<Void> loaded)
+        {
+            if(finished)
+                return false;
+            handlers.add(handler);
+            done.add(loaded);
+            return true;
+        }
+
+        private synchronized void finish()
+        {
+            finished = true;
+            sharedLoads.remove(key, this);
+        }
+
+        @Override
+        public void trackLoaded(AudioTrack track)
+        {
+            finish();
+            loadCache.put(key, track);
+            deliver(handler -> handler.trackLoaded(track), handler -> handler.trackLoaded(track.makeClone()));
+        }
+
+        @Override
+        public void playlistLoaded(AudioPlaylist playlist)
+        {
+            finish();
+            loadCache.put(key, playlist);
+            deliver(handler -> handler.playlistLoaded(playlist), handler -> handler.playlistLoaded(copyOf(playlist)));
+        }
+
+        @Override
+        public void noMatches()
+        {
+            finish();
+            deliver(handler -> handler.noMatches(), handler -> handler.noMatches());
+        }
+
+        @Override
+        public void loadFailed(FriendlyException exception)
+        {
+            finish();
+            deliver(handler -> handler.loadFailed(exception), handler -> handler.loadFailed(exception));
+        }
+
+        /**
+         * Hands the result to the first handler as it is, and to the rest as copies
+         */
+        private void deliver(Consumer<AudioLoadResultHandler> first, Consumer<AudioLoadResultHandler> rest)
+        {
+            for(int i = 0; i < handlers.size(); i++)
+            {
+                try
+                {
+                    (i == 0 ? first : rest).accept(handlers.get(i));
+                }
+                catch(RuntimeException ex)
+                {
+                    LOGGER.warn("Load result handler for {} failed", key, ex);
+                }
+                finally
+                {
+                    done.get(i).complete(null);
+                }
+            }
+        }
+
+        private AudioPlaylist copyOf(AudioPlaylist playlist)
+        {
+            List<AudioTrack> tracks = new ArrayList<>(playlist.getTracks().size());
+            AudioTrack selected = null;
+            for(AudioTrack track: playlist.getTracks())
+            {
+                AudioTrack clone = track.makeClone();
+                if(track == playlist.getSelectedTrack())
+                    selected = clone;
+                tracks.add(clone);
+            }
+            return new BasicAudioPlaylist(playlist.getName(), tracks, selected, playlist.isSearchResult());
+        }
+    }
 }
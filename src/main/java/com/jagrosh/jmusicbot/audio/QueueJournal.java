@@ -0,0 +1,592 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.channel.middleman.AudioChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps every guild's queue and playback position in a local file, so that
+ * playback can pick up where it left off after a restart or a crash.
+ * <p>
+ * The file is a journal of records appended as things change. A playing
+ * record holds the voice channel, the playing track and its position. The
+ * queue is journaled as it changes: when entries were only taken from its head
+ * and added at its end, which is what playing and queueing do, a shifted
+ * record holds just how many were taken and the entries that were added. Any
+ * other change, such as a shuffle or a move, writes a queue record with the
+ * whole queue; for queues longer than {@link #LARGE_QUEUE} entries that
+ * happens at most once every {@link #FULL_INTERVAL}, so a changed queue may
+ * be journaled up to that late.
+ * <p>
+ * Tracks are stored in lavaplayer's binary track format, so reading them back
+ * does not load anything from the network. The file is rewritten with just
+ * the current state once it has grown.
+ */
+public class QueueJournal
+{
+    private final static Logger LOGGER = LoggerFactory.getLogger(QueueJournal.class);
+    private final static int VERSION = 1;
+    final static byte QUEUE = 1, PLAYING = 2, CLEARED = 3, SHIFTED = 4;
+    // the file is rewritten once it is this much larger than its last rewrite
+    private final static long COMPACT_SLACK = 4 * 1024 * 1024;
+    // records claiming to be larger than this are taken to be damaged
+    private final static int MAX_PAYLOAD = 64 * 1024 * 1024;
+    // queues longer than this are written whole at most once every FULL_INTERVAL
+    private final static int LARGE_QUEUE = 1000;
+    private final static long FULL_INTERVAL = 60 * 1000;
+
+    private final PlayerManager manager;
+    private final Path file;
+    // what was last written for each guild, to tell what has changed since
+    private final Map<Long, Mark> marks = new HashMap<>();
+    // the voice channel each guild was last seen in, for when it is not connected
+    // yet after resuming, or no longer connected while shutting down
+    private final Map<Long, Long> channels = new HashMap<>();
+    private JDA jda;
+    private DataOutputStream out;
+    private long size = 0, compactedSize = 0;
+    private boolean resumed = false;
+
+    public QueueJournal(PlayerManager manager, Path file)
+    {
+        this.manager = manager;
+        this.file = file;
+    }
+
+    /**
+     * Reconnects to the saved voice channels and restores each guild's queue
+     * and position. This only happens once; the journal is then kept up to
+     * date by {@link #flush()}.
+     *
+     * @return the guilds that were resumed
+     */
+    public synchronized Set<Long> resume(JDA jda)
+    {
+        Set<Long> guilds = new HashSet<>();
+        if(resumed)
+            return guilds;
+        resumed = true;
+        this.jda = jda;
+        for(Map.Entry<Long, Saved> entry: read().entrySet())
+        {
+            Guild guild = jda.getGuildById(entry.getKey());
+            Saved saved = entry.getValue();
+            AudioChannel channel = guild == null ? null : guild.getChannelById(AudioChannel.class, saved.channel);
+            if(channel == null)
+                continue;
+            try
+            {
+                QueuedTrack playing = saved.playing == null ? null : saved.playing.decode(manager);
+                List<QueuedTrack> queue = new ArrayList<>(saved.queue.size());
+                for(Entry e: saved.queue)
+                {
+                    QueuedTrack qtrack = e.decode(manager);
+                    if(qtrack != null)
+                        queue.add(qtrack);
+                }
+                if(playing == null && queue.isEmpty())
+                    continue;
+                manager.setUpHandler(guild).restore(playing, saved.position, saved.paused, queue);
+                guild.getAudioManager().openAudioConnection(channel);
+                channels.put(guild.getIdLong(), channel.getIdLong());
+                guilds.add(guild.getIdLong());
+            }
+            catch(Exception e)
+            {
+                LOGGER.warn("Failed to resume the queue in guild {}: {}", guild.getId(), e.toString());
+            }
+        }
+        if(!guilds.isEmpty())
+            LOGGER.info("Resumed playback in {} guild(s) from {}", guilds.size(), file.toAbsolutePath());
+        compact();
+        return guilds;
+    }
+
+    /**
+     * Appends a record for everything that has changed since the last flush
+     */
+    public synchronized void flush()
+    {
+        if(!resumed)
+            return;
+        if(out == null)
+        {
+            // the last write failed, so start over from the current state
+            compact();
+            return;
+        }
+        try
+        {
+            Set<Long> seen = new HashSet<>();
+            for(Map.Entry<Long, AudioHandler> entry: manager.getHandlers().entrySet())
+            {
+                seen.add(entry.getKey());
+                write(entry.getKey(), entry.getValue());
+            }
+            for(Iterator<Long> it = marks.keySet().iterator(); it.hasNext(); )
+            {
+                long guildId = it.next();
+                if(!seen.contains(guildId))
+                {
+                    append(CLEARED, guildId, new byte[0]);
+                    channels.remove(guildId);
+                    it.remove();
+                }
+            }
+            if(out != null)
+                out.flush();
+            if(size - compactedSize > COMPACT_SLACK)
+                compact();
+        }
+        catch(IOException e)
+        {
+            LOGGER.warn("Failed to write the queue journal: " + e);
+            closeOutput();
+        }
+    }
+
+    /**
+     * Rewrites the journal with the current state of every guild; called on shutdown
+     */
+    public synchronized void save()
+    {
+        if(resumed)
+            compact();
+        closeOutput();
+    }
+
+    private void compact()
+    {
+        closeOutput();
+        marks.clear();
+        size = 0;
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try
+        {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp.toFile())));
+            out.writeInt(VERSION);
+            size = 4;
+            for(Map.Entry<Long, AudioHandler> entry: manager.getHandlers().entrySet())
+                write(entry.getKey(), entry.getValue());
+            out.close();
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            compactedSize = size;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file.toFile(), true)));
+        }
+        catch(IOException e)
+        {
+            LOGGER.warn("Failed to rewrite the queue journal: " + e);
+            closeOutput();
+        }
+    }
+
+    private void closeOutput()
+    {
+        if(out == null)
+            return;
+        try
+        {
+            out.close();
+        }
+        catch(IOException ignore) {}
+        out = null;
+    }
+
+    /**
+     * Appends the records for whatever has changed in the guild since its last records
+     */
+    private void write(long guildId, AudioHandler handler) throws IOException
+    {
+        Mark last = marks.get(guildId);
+        Guild guild = jda.getGuildById(guildId);
+        AudioChannel connected = guild == null ? null : guild.getAudioManager().getConnectedChannel();
+        if(connected != null)
+            channels.put(guildId, connected.getIdLong());
+        long channel = channels.getOrDefault(guildId, 0L);
+        AudioTrack track = handler.getPlayer().getPlayingTrack();
+        List<QueuedTrack> queue = handler.getQueue().getList();
+        if(channel == 0L || (track == null && queue.isEmpty()))
+        {
+            if(last != null)
+            {
+                append(CLEARED, guildId, new byte[0]);
+                marks.remove(guildId);
+            }
+            channels.remove(guildId);
+            return;
+        }
+        Mark mark = new Mark(channel, track, track == null ? 0 : track.getPosition(), handler.getPlayer().isPaused());
+        if(last != null)
+        {
+            mark.queue = last.queue;
+            mark.complete = last.complete;
+            mark.fullAt = last.fullAt;
+        }
+        if(last == null || last.queue != queue)
+            writeQueue(guildId, mark, queue);
+        if(last == null || last.channel != mark.channel || last.track != mark.track
+                || last.position != mark.position || last.paused != mark.paused)
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            data.writeLong(channel);
+            data.writeBoolean(mark.paused);
+            data.writeBoolean(track != null);
+            if(track != null)
+            {
+                data.writeLong(mark.position);
+                writeEntry(data, handler.getRequestMetadata(), manager.encodeTrack(track));
+            }
+            append(PLAYING, guildId, bytes.toByteArray());
+        }
+        marks.put(guildId, mark);
+    }
+
+    /**
+     * Appends a record for the queue: a shifted record if the queue is the one
+     * last written with entries only taken from its head and added at its end,
+     * and otherwise a queue record with the whole queue, unless the queue is
+     * large and was written whole less than {@link #FULL_INTERVAL} ago
+     */
+    private void writeQueue(long guildId, Mark mark, List<QueuedTrack> queue) throws IOException
+    {
+        int dropped = mark.queue == null || !mark.complete ? -1 : dropped(mark.queue, queue);
+        if(dropped >= 0)
+        {
+            int kept = mark.queue.size() - dropped;
+            ByteArrayOutputStream entries = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(entries);
+            boolean encoded = true;
+            for(QueuedTrack qtrack: queue.subList(kept, queue.size()))
+            {
+                byte[] bytes = qtrack.encode(manager);
+                if(bytes == null)
+                {
+                    encoded = false;
+                    break;
+                }
+                writeEntry(data, qtrack.getRequestMetadata(), bytes);
+            }
+            if(encoded)
+            {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() + 8);
+                DataOutputStream header = new DataOutputStream(bytes);
+                header.writeInt(dropped);
+                header.writeInt(queue.size() - kept);
+                entries.writeTo(bytes);
+                append(SHIFTED, guildId, bytes.toByteArray());
+                mark.queue = queue;
+                return;
+            }
+        }
+        long now = System.currentTimeMillis();
+        if(mark.queue != null && queue.size() > LARGE_QUEUE && now - mark.fullAt < FULL_INTERVAL)
+            return;
+        // entries whose encoded form is no longer available are left out, and
+        // the next change then writes the whole queue again
+        ByteArrayOutputStream entries = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(entries);
+        int count = 0;
+        for(QueuedTrack qtrack: queue)
+        {
+            byte[] encoded = qtrack.encode(manager);
+            if(encoded != null)
+            {
+                writeEntry(data, qtrack.getRequestMetadata(), encoded);
+                count++;
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entries.size() + 4);
+        new DataOutputStream(bytes).writeInt(count);
+        entries.writeTo(bytes);
+        append(QUEUE, guildId, bytes.toByteArray());
+        mark.queue = queue;
+        mark.complete = count == queue.size();
+        mark.fullAt = now;
+    }
+
+    /**
+     * @return how many entries were taken from the head of the queue, if that
+     *         and adding entries at its end is all that changed; otherwise -1
+     */
+    static <T> int dropped(List<T> before, List<T> after)
+    {
+        int dropped = 0;
+        if(after.isEmpty())
+            dropped = before.size();
+        else
+            while(dropped < before.size() && before.get(dropped) != after.get(0))
+                dropped++;
+        int kept = before.size() - dropped;
+        if(kept > after.size())
+            return -1;
+        for(int i = 0; i < kept; i++)
+            if(before.get(dropped + i) != after.get(i))
+                return -1;
+        return dropped;
+    }
+
+    private void append(byte type, long guildId, byte[] payload) throws IOException
+    {
+        if(out == null)
+            throw new IOException("the journal is not open");
+        size += writeRecord(out, type, guildId, payload);
+    }
+
+    /**
+     * Writes a record: its type, the guild, the payload's length, the payload
+     * and the payload's CRC32
+     *
+     * @return the number of bytes written
+     */
+    static int writeRecord(DataOutputStream out, byte type, long guildId, byte[] payload) throws IOException
+    {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeByte(type);
+        out.writeLong(guildId);
+        out.writeInt(payload.length);
+        out.write(payload);
+        out.writeLong(crc.getValue());
+        return 1 + 8 + 4 + payload.length + 8;
+    }
+
+    /**
+     * @return the last saved state of each guild
+     */
+    private Map<Long, Saved> read()
+    {
+        Map<Long, Saved> saved = new HashMap<>();
+        try(InputStream stream = Files.newInputStream(file))
+        {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(stream));
+            if(in.readInt() != VERSION)
+            {
+                LOGGER.warn("Ignoring queue journal {} written by another version", file.toAbsolutePath());
+                return saved;
+            }
+            if(!readRecords(in, saved))
+                LOGGER.warn("Ignoring the damaged end of queue journal {}", file.toAbsolutePath());
+        }
+        catch(NoSuchFileException ignore)
+        {
+            // nothing has been saved yet
+        }
+        catch(IOException e)
+        {
+            LOGGER.warn("Failed to read the queue journal: " + e);
+        }
+        return saved;
+    }
+
+    /**
+     * Applies the records that follow the version header, up to the end of the
+     * journal or up to a record that was cut off by a crash or is damaged
+     *
+     * @param saved the state of each guild, updated as the records are read
+     * @return true if the whole journal was read
+     */
+    static boolean readRecords(DataInputStream in, Map<Long, Saved> saved)
+    {
+        try
+        {
+            while(true)
+            {
+                byte type;
+                try
+                {
+                    type = in.readByte();
+                }
+                catch(EOFException end)
+                {
+                    return true;
+                }
+                long guildId = in.readLong();
+                int length = in.readInt();
+                if(length < 0 || length > MAX_PAYLOAD)
+                    return false;
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                CRC32 crc = new CRC32();
+                crc.update(payload);
+                if(crc.getValue() != in.readLong())
+                    return false;
+                if(!apply(type, guildId, payload, saved))
+                    return false;
+            }
+        }
+        catch(IOException e)
+        {
+            // keep whatever was read before the damaged part
+            return false;
+        }
+    }
+
+    private static boolean apply(byte type, long guildId, byte[] payload, Map<Long, Saved> saved) throws IOException
+    {
+        DataInputStream data = new DataInputStream(new ByteArrayInputStream(payload));
+        switch(type)
+        {
+            case QUEUE:
+                Saved queued = saved.computeIfAbsent(guildId, k -> new Saved());
+                queued.queue.clear();
+                for(int i = data.readInt(); i > 0; i--)
+                    queued.queue.add(readEntry(data));
+                return true;
+            case SHIFTED:
+                Saved shifted = saved.computeIfAbsent(guildId, k -> new Saved());
+                shifted.queue.subList(0, Math.min(data.readInt(), shifted.queue.size())).clear();
+                for(int i = data.readInt(); i > 0; i--)
+                    shifted.queue.add(readEntry(data));
+                return true;
+            case PLAYING:
+                Saved playing = saved.computeIfAbsent(guildId, k -> new Saved());
+                playing.channel = data.readLong();
+                playing.paused = data.readBoolean();
+                playing.playing = null;
+                if(data.readBoolean())
+                {
+                    playing.position = data.readLong();
+                    playing.playing = readEntry(data);
+                }
+                return true;
+            case CLEARED:
+                saved.remove(guildId);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    static void writeEntry(DataOutputStream data, RequestMetadata rm, byte[] track) throws IOException
+    {
+        RequestMetadata.UserInfo user = rm == null ? null : rm.user;
+        data.writeBoolean(user != null);
+        if(user != null)
+        {
+            data.writeLong(user.id);
+            writeNullable(data, user.username);
+            writeNullable(data, user.discrim);
+            writeNullable(data, user.avatar);
+        }
+        RequestMetadata.RequestInfo info = rm == null ? null : rm.requestInfo;
+        data.writeBoolean(info != null);
+        if(info != null)
+        {
+            writeNullable(data, info.query);
+            writeNullable(data, info.url);
+            data.writeLong(info.startTimestamp);
+        }
+        data.writeInt(track.length);
+        data.write(track);
+    }
+
+    static Entry readEntry(DataInputStream data) throws IOException
+    {
+        RequestMetadata.UserInfo user = null;
+        if(data.readBoolean())
+            user = new RequestMetadata.UserInfo(data.readLong(), readNullable(data), readNullable(data), readNullable(data));
+        RequestMetadata.RequestInfo info = null;
+        if(data.readBoolean())
+            info = new RequestMetadata.RequestInfo(readNullable(data), readNullable(data), data.readLong());
+        byte[] track = new byte[data.readInt()];
+        data.readFully(track);
+        return new Entry(RequestMetadata.restore(user, info), track);
+    }
+
+    private static void writeNullable(DataOutputStream data, String value) throws IOException
+    {
+        data.writeBoolean(value != null);
+        if(value != null)
+            data.writeUTF(value);
+    }
+
+    private static String readNullable(DataInputStream data) throws IOException
+    {
+        return data.readBoolean() ? data.readUTF() : null;
+    }
+
+    private static class Mark
+    {
+        private final long channel, position;
+        private final AudioTrack track;
+        private final boolean paused;
+        // the queue's snapshot list as last journaled; the snapshot is replaced
+        // on every change to the queue
+        private List<QueuedTrack> queue;
+        // false if entries were left out of the last queue record
+        private boolean complete;
+        // when the queue was last written whole
+        private long fullAt;
+
+        private Mark(long channel, AudioTrack track, long position, boolean paused)
+        {
+            this.channel = channel;
+            this.track = track;
+            this.position = position;
+            this.paused = paused;
+        }
+    }
+
+    static class Saved
+    {
+        long channel, position;
+        boolean paused;
+        Entry playing;
+        final List<Entry> queue = new ArrayList<>();
+    }
+
+    static class Entry
+    {
+        final RequestMetadata rm;
+        final byte[] track;
+
+        private Entry(RequestMetadata rm, byte[] track)
+        {
+            this.rm = rm;
+            this.track = track;
+        }
+
+        /**
+         * @return the entry, or null if the track could not be decoded
+         */
+        private QueuedTrack decode(PlayerManager manager)
+        {
+            try
+            {
+                AudioTrack decoded = manager.decodeTrack(track);
+                return decoded == null ? null : new QueuedTrack(decoded, rm);
+            }
+            catch(IOException e)
+            {
+                LOGGER.warn("Failed to decode a journaled track: {}", e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package com.jagrosh.jmusicbot.audio;
+
+import com.jagrosh.jmusicbot.queue.AbstractQueue;
+import com.jagrosh.jmusicbot.utils.TimeUtil;
+import com.typesafe.config.Config;
+
+/**
+ * Limits on how many tracks, and how much play time, a user or a whole guild
+ * can have queued, read from the {@code queue} config block. The checks use
+ * the counts the queue keeps, so they cost the same however long it is.
+ */
+public class QueueQuota
+{
+    public enum Limit
+    {
+        USER_ENTRIES, USER_TIME, GUILD_ENTRIES, GUILD_TIME
+    }
+
+    private final int userEntries, guildEntries;
+    private final long userTime, guildTime;
+
+    private QueueQuota(int userEntries, long userTime, int guildEntries, long guildTime)
+    {
+        this.userEntries = userEntries;
+        this.userTime = userTime;
+        this.guildEntries = guildEntries;
+        this.guildTime = guildTime;
+    }
+
+    /**
+     * @param config the queue config block
+     * @return the quota; values of zero or less are no limit
+     */
+    public static QueueQuota fromConfig(Config config)
+    {
+        return new QueueQuota(config.getInt("userentries"), config.getLong("usertime") * 1000,
+                config.getInt("guildentries"), config.getLong("guildtime") * 1000);
+    }
+
+    /**
+     * @param queue the queue to add to
+     * @param owner the user adding
+     * @param entries how many entries they are adding
+     * @param duration the total length of those entries in milliseconds,
+     *        not counting streams
+     * @return the first limit the entries would go over, or null if they fit
+     */
+    public Limit check(AbstractQueue<?> queue, long owner, int entries, long duration)
+    {
+        if(userEntries > 0 && queue.count(owner) + entries > userEntries)
+            return Limit.USER_ENTRIES;
+        if(userTime > 0 && queue.getDuration(owner) + duration > userTime)
+            return Limit.USER_TIME;
+        if(guildEntries > 0 && queue.size() + entries > guildEntries)
+            return Limit.GUILD_ENTRIES;
+        if(guildTime > 0 && queue.getTotalDuration() + duration > guildTime)
+            return Limit.GUILD_TIME;
+        return null;
+    }
+
+    /**
+     * @return a description of the limit, to show the user who hit it
+     */
+    public String describe(Limit limit)
+    {
+        switch(limit)
+        {
+            case USER_ENTRIES:
+                return "you can have at most `"+userEntries+"` tracks in the queue";
+            case USER_TIME:
+                return "your tracks in the queue can be at most `"+TimeUtil.formatTime(userTime)+"` long in total";
+            case GUILD_ENTRIES:
+                return "the queue can hold at most `"+guildEntries+"` tracks";
+            default:
+                return "the queue can be at most `"+TimeUtil.formatTime(guildTime)+"` long";
+        }
+    }
+
+    public static class Result
+    {
+        private final int added, position, duplicates;
+        private final Limit limit;
+
+        Result(int added, int position, Limit limit, int duplicates)
+        {
+            this.added = added;
+            this.position = position;
+            this.limit = limit;
+            this.duplicates = duplicates;
+        }
+
+        /**
+         * @return how many of the tracks were added
+         */
+        public int getAdded()
+        {
+            return added;
+        }
+
+        /**
+         * @return the queue position of the first track, or -1 if it started
+         *         playing right away or nothing was added
+         */
+        public int getPosition()
+        {
+            return position;
+        }
+
+        /**
+         * @return the limit that kept the remaining tracks out, or null if all were added
+         */
+        public Limit getLimit()
+        {
+            return limit;
+        }
+
+        /**
+         * @return how many of the tracks were left out because they were
+         *         already queued, if the guild rejects duplicates
+         */
+        public int getDuplicates()
+        {
+            return duplicates;
+        }
+    }
+
+    /**
+     * @return the length the quota counts for a track, which is zero for streams
+     */
+    static long lengthOf(QueuedTrack qtrack)
+    {
+        long duration = qtrack.getDuration();
+        return duration <= 0 || duration == Long.MAX_VALUE ? 0 : duration;
+    }
+}
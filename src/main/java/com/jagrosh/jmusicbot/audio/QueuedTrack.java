@@ -19,6 +19,10 @@ import com.jagrosh.jmusicbot.utils.TimeUtil;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrackInfo;
 import com.jagrosh.jmusicbot.queue.Queueable;
+import java.io.IOException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.slf4j.LoggerFactory;
 
 /**
  *
@@ -26,12 +30,24 @@ import com.jagrosh.jmusicbot.queue.Queueable;
  */
 public class QueuedTrack implements Queueable
 {
-    private final AudioTrack track;
+    // the video id in the forms a YouTube link comes in: watch pages on any
+    // of the sites, youtu.be, shorts, embeds and live pages, with any other
+    // parameters around it
+    private final static Pattern YOUTUBE = Pattern.compile("^(?:https?://)?(?:(?:www|m|music)\\.)?(?:youtube\\.com/(?:watch\\?(?:[^#]*&)?v=|shorts/|embed/|live/)|youtu\\.be/)([\\w-]{11})(?![\\w-])", Pattern.CASE_INSENSITIVE);
+
     private final RequestMetadata requestMetadata;
+    private final long duration;
+    private final String key;
+    // exactly one of these is set: the live track, or its encoded form while
+    // the entry is far from the head of the queue
+    private volatile AudioTrack track;
+    private volatile Encoded encoded;
 
     public QueuedTrack(AudioTrack track, RequestMetadata rm)
     {
         this.track = track;
+        this.duration = track.getDuration();
+        this.key = keyOf(track);
         // Never set userData on YouTube tracks to avoid JSON parsing conflicts
         // YouTube tracks use userData internally for token storage
         // Store our metadata separately in the requestMetadata field
@@ -47,9 +63,112 @@ public class QueuedTrack implements Queueable
         return requestMetadata.getOwner();
     }
 
+    @Override
+    public long getDuration()
+    {
+        return duration;
+    }
+
+    @Override
+    public String getKey()
+    {
+        return key;
+    }
+
+    /**
+     * @return what the track plays, for finding the same track in the queue
+     */
+    public static String keyOf(AudioTrack track)
+    {
+        return track.getInfo().uri != null ? keyOf(track.getInfo().uri) : track.getIdentifier();
+    }
+
+    /**
+     * Turns a link into the key of the track it plays, so that different links
+     * to the same track match: YouTube links are keyed by their video id, and
+     * other links are normalized and compared without their scheme
+     *
+     * @return the key, as {@link #keyOf(AudioTrack)} gives it for the track
+     */
+    public static String keyOf(String url)
+    {
+        String normalized = LoadCache.normalize(url);
+        Matcher youtube = YOUTUBE.matcher(normalized);
+        if(youtube.find())
+            return "youtube:" + youtube.group(1);
+        if(normalized.startsWith("https://"))
+            return normalized.substring(8);
+        if(normalized.startsWith("http://"))
+            return normalized.substring(7);
+        return normalized;
+    }
+
+    /**
+     * Decodes the track first if it is held in encoded form
+     *
+     * @return the track, or null if it could not be decoded
+     */
     public AudioTrack getTrack()
     {
-        return track;
+        AudioTrack current = track;
+        if(current != null)
+            return current;
+        synchronized(this)
+        {
+            if(track == null && encoded != null)
+            {
+                track = encoded.decode();
+                encoded = null;
+            }
+            return track;
+        }
+    }
+
+    /**
+     * Replaces the live track with its encoded form, kept on the heap or, if a
+     * spill is given, in the spill file. The track is decoded again when it is
+     * next needed.
+     */
+    public synchronized void compact(PlayerManager manager, TrackSpill spill)
+    {
+        if(track == null)
+            return;
+        try
+        {
+            byte[] data = manager.encodeTrack(track);
+            TrackSpill.Entry entry = spill == null ? null : spill.write(data);
+            encoded = entry == null ? new Encoded(manager, data, null, null) : new Encoded(manager, null, spill, entry);
+            track = null;
+        }
+        catch(IOException ex)
+        {
+            LoggerFactory.getLogger(QueuedTrack.class).debug("Keeping track {} live: {}", track.getIdentifier(), ex.getMessage());
+        }
+    }
+
+    /**
+     * @return where the encoded track is kept in the spill file, or null if it is not there
+     */
+    TrackSpill.Entry getSpillEntry()
+    {
+        Encoded current = encoded;
+        return current == null ? null : current.entry;
+    }
+
+    /**
+     * @return the track in lavaplayer's binary track format, without decoding
+     *         it if it is held in encoded form, or null if it is no longer available
+     */
+    public byte[] encode(PlayerManager manager) throws IOException
+    {
+        AudioTrack current;
+        synchronized(this)
+        {
+            if(track == null)
+                return encoded == null ? null : encoded.bytes();
+            current = track;
+        }
+        return manager.encodeTrack(current);
     }
 
     public RequestMetadata getRequestMetadata()
@@ -60,10 +179,73 @@ public class QueuedTrack implements Queueable
     @Override
     public String toString()
     {
-        String entry = "`[" + TimeUtil.formatTime(track.getDuration()) + "]` ";
-        AudioTrackInfo trackInfo = track.getInfo();
-        entry = entry + (trackInfo.uri.startsWith("http") ? "[**" + trackInfo.title + "**]("+trackInfo.uri+")" : "**" + trackInfo.title + "**");
+        String entry = "`[" + TimeUtil.formatTime(duration) + "]` ";
+        AudioTrackInfo trackInfo = getInfo();
+        if(trackInfo == null)
+            entry = entry + "**Unknown track**";
+        else
+            entry = entry + (trackInfo.uri.startsWith("http") ? "[**" + trackInfo.title + "**]("+trackInfo.uri+")" : "**" + trackInfo.title + "**");
         // Use our stored requestMetadata instead of getUserData to avoid JSON parsing conflicts
         return entry + " - <@" + (requestMetadata != null ? requestMetadata.getOwner() : 0L) + ">";
     }
+
+    /**
+     * @return the track's title, read without keeping an encoded track decoded
+     */
+    public String getTitle()
+    {
+        AudioTrackInfo trackInfo = getInfo();
+        return trackInfo == null ? "Unknown track" : trackInfo.title;
+    }
+
+    // reads the info without keeping a decoded track around
+    private AudioTrackInfo getInfo()
+    {
+        AudioTrack current = track;
+        if(current == null)
+        {
+            synchronized(this)
+            {
+                current = track != null ? track : encoded == null ? null : encoded.decode();
+            }
+        }
+        return current == null ? null : current.getInfo();
+    }
+
+    private static class Encoded
+    {
+        private final PlayerManager manager;
+        private final byte[] data;
+        private final TrackSpill spill;
+        private final TrackSpill.Entry entry;
+
+        private Encoded(PlayerManager manager, byte[] data, TrackSpill spill, TrackSpill.Entry entry)
+        {
+            this.manager = manager;
+            this.data = data;
+            this.spill = spill;
+            this.entry = entry;
+        }
+
+        private byte[] bytes()
+        {
+            return data != null ? data : spill.read(entry);
+        }
+
+        private AudioTrack decode()
+        {
+            byte[] bytes = bytes();
+            if(bytes == null)
+                return null;
+            try
+            {
+                return manager.decodeTrack(bytes);
+            }
+            catch(IOException ex)
+            {
+                LoggerFactory.getLogger(QueuedTrack.class).warn("Failed to decode a queued track: {}", ex.getMessage());
+                return null;
+            }
+        }
+    }
 }
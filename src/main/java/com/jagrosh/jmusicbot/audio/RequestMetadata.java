@@ -29,7 +29,7 @@ import java.util.regex.Pattern;
  */
 public class RequestMetadata
 {
-    public static final RequestMetadata EMPTY = new RequestMetadata(null, null);
+    public static final RequestMetadata EMPTY = new RequestMetadata((User) null, null);
     
     public final UserInfo user;
     public final RequestInfo requestInfo;
@@ -40,6 +40,20 @@ public class RequestMetadata
         this.requestInfo = requestInfo;
     }
     
+    private RequestMetadata(UserInfo user, RequestInfo requestInfo)
+    {
+        this.user = user;
+        this.requestInfo = requestInfo;
+    }
+    
+    /**
+     * Rebuilds metadata from its stored fields, as read back by {@link QueueJournal}
+     */
+    static RequestMetadata restore(UserInfo user, RequestInfo requestInfo)
+    {
+        return new RequestMetadata(user, requestInfo);
+    }
+    
     public long getOwner()
     {
         return user == null ? 0L : user.id;
@@ -49,6 +63,14 @@ public class RequestMetadata
     {
         return new RequestMetadata(event.getAuthor(), new RequestInfo(event.getArgs(), track.getInfo().uri));
     }
+
+    /**
+     * @return metadata to share between all the tracks of a playlist request
+     */
+    public static RequestMetadata fromPlaylist(CommandEvent event)
+    {
+        return new RequestMetadata(event.getAuthor(), new RequestInfo(event.getArgs(), event.getArgs()));
+    }
     
     public static class RequestInfo
     {
@@ -60,7 +82,7 @@ public class RequestMetadata
             this(query, url, tryGetTimestamp(query));
         }
 
-        private RequestInfo(String query, String url, long startTimestamp)
+        RequestInfo(String query, String url, long startTimestamp)
         {
             this.url = url;
             this.query = query;
@@ -80,7 +102,7 @@ public class RequestMetadata
         public final long id;
         public final String username, discrim, avatar;
         
-        private UserInfo(long id, String username, String discrim, String avatar)
+        UserInfo(long id, String username, String discrim, String avatar)
         {
             this.id = id;
             this.username = username;
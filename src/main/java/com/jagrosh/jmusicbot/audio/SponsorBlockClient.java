@@ -1,26 +1,170 @@
 package com.jagrosh.jmusicbot.audio;
 
+import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 /**
  * Fetches SponsorBlock segments for YouTube videos.
+ *
+ * A single instance is shared by every guild. Compiled segments are kept in a
+ * bounded LRU cache keyed by video ID, concurrent requests for the same video
+ * share one HTTP request, and the cache can optionally be persisted to disk.
  */
 public class SponsorBlockClient {
+    private static final Logger LOGGER = LoggerFactory.getLogger(SponsorBlockClient.class);
     private static final String API_URL = "https://sponsor.ajay.app/api/skipSegments?videoID=";
     private final HttpClient client;
+    private final int maxCacheSize;
+    private final long cacheTtlMillis;
+    private final Path cacheFile;
+    private final Map<String, CacheEntry> cache;
+    private final Map<String, CompletableFuture<SkipIndex>> inFlight = new ConcurrentHashMap<>();
 
-    public SponsorBlockClient() {
+    /**
+     * @param maxCacheSize   maximum number of videos to keep segments for; 0 disables the cache
+     * @param cacheTtlMillis how long cached segments stay valid
+     * @param cacheFile      file to persist the cache to, or null to keep it in memory only
+     */
+    public SponsorBlockClient(int maxCacheSize, long cacheTtlMillis, Path cacheFile) {
         this.client = HttpClient.newHttpClient();
+        this.maxCacheSize = maxCacheSize;
+        this.cacheTtlMillis = cacheTtlMillis;
+        this.cacheFile = cacheFile;
+        this.cache = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > SponsorBlockClient.this.maxCacheSize;
+            }
+        };
     }
 
-    public java.util.concurrent.CompletableFuture<List<Segment>> fetchSegmentsAsync(String videoId) {
+    /**
+     * Gets the skip index for a video, from the cache if possible. Concurrent
+     * calls for a video that is not cached share a single request.
+     */
+    public CompletableFuture<SkipIndex> getSkipIndexAsync(String videoId) {
+        SkipIndex cached = getCached(videoId);
+        if (cached != null)
+            return CompletableFuture.completedFuture(cached);
+        CompletableFuture<SkipIndex> created = new CompletableFuture<>();
+        CompletableFuture<SkipIndex> existing = inFlight.putIfAbsent(videoId, created);
+        if (existing != null)
+            return existing;
+        fetchSkipIndexAsync(videoId).whenComplete((index, ex) -> {
+            if (ex == null)
+                putCached(videoId, index);
+            inFlight.remove(videoId, created);
+            if (ex == null)
+                created.complete(index);
+            else
+                created.completeExceptionally(ex);
+        });
+        return created;
+    }
+
+    /**
+     * @return the cached skip index for a video, or null if it is not cached or has expired
+     */
+    public SkipIndex getCached(String videoId) {
+        synchronized (cache) {
+            CacheEntry entry = cache.get(videoId);
+            if (entry == null)
+                return null;
+            if (entry.isExpired(System.currentTimeMillis(), cacheTtlMillis)) {
+                cache.remove(videoId);
+                return null;
+            }
+            return entry.index;
+        }
+    }
+
+    public int getCacheSize() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private void putCached(String videoId, SkipIndex index) {
+        if (maxCacheSize <= 0)
+            return;
+        synchronized (cache) {
+            cache.put(videoId, new CacheEntry(index, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * Loads the persisted cache, if persistence is enabled. Expired entries are dropped.
+     */
+    public void loadCache() {
+        if (cacheFile == null || maxCacheSize <= 0)
+            return;
+        try {
+            JSONObject obj = new JSONObject(new String(Files.readAllBytes(cacheFile)));
+            long now = System.currentTimeMillis();
+            synchronized (cache) {
+                for (String videoId : obj.keySet()) {
+                    JSONObject o = obj.getJSONObject(videoId);
+                    CacheEntry entry = new CacheEntry(SkipIndex.fromJson(o.getJSONArray("segments")), o.getLong("fetched"));
+                    if (!entry.isExpired(now, cacheTtlMillis))
+                        cache.put(videoId, entry);
+                }
+            }
+            LOGGER.info("Loaded {} cached SponsorBlock entries from {}", getCacheSize(), cacheFile.toAbsolutePath());
+        } catch (NoSuchFileException ignore) {
+            // nothing has been persisted yet
+        } catch (IOException | JSONException e) {
+            LOGGER.warn("Failed to load SponsorBlock cache: " + e);
+        }
+    }
+
+    /**
+     * Writes the cache to disk, if persistence is enabled.
+     */
+    public void saveCache() {
+        if (cacheFile == null || maxCacheSize <= 0)
+            return;
+        JSONObject obj = new JSONObject();
+        synchronized (cache) {
+            cache.forEach((videoId, entry) -> obj.put(videoId, new JSONObject()
+                    .put("fetched", entry.fetched)
+                    .put("segments", entry.index.toJson())));
+        }
+        try {
+            Files.write(cacheFile, obj.toString().getBytes());
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write SponsorBlock cache: " + e);
+        }
+    }
+
+    /**
+     * Fetches the segments for a video and compiles them into a {@link SkipIndex}.
+     * This always performs a request; use {@link #getSkipIndexAsync(String)} to go through the cache.
+     * The future fails, so that nothing is cached, unless SponsorBlock answered with segments or with 404.
+     */
+    public CompletableFuture<SkipIndex> fetchSkipIndexAsync(String videoId) {
+        return fetchSegmentsAsync(videoId).thenApply(SkipIndex::of);
+    }
+
+    public CompletableFuture<List<Segment>> fetchSegmentsAsync(String videoId) {
         // Request only non-music segments from SponsorBlock
         String url = API_URL + videoId + "&category=music_offtopic";
         HttpRequest request = HttpRequest.newBuilder()
@@ -28,22 +172,28 @@ public class SponsorBlockClient {
             .build();
         return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
             .thenApply(response -> {
+                // 404 is how SponsorBlock says a video has no segments; any other
+                // failure must not end up cached as "nothing to skip"
+                if (response.statusCode() == 404)
+                    return new ArrayList<>();
+                if (response.statusCode() != 200) {
+                    LOGGER.warn("SponsorBlock returned HTTP {} for {}", response.statusCode(), videoId);
+                    throw new CompletionException(new IOException("SponsorBlock returned HTTP " + response.statusCode()));
+                }
                 List<Segment> segments = new ArrayList<>();
-                String body = response.body();
                 try {
-                    if (body != null && body.trim().startsWith("[")) {
-                        JSONArray arr = new JSONArray(body);
-                        for (int i = 0; i < arr.length(); i++) {
-                            JSONObject obj = arr.getJSONObject(i);
-                            String category = obj.optString("category", "unknown");
-                            JSONArray seg = obj.getJSONArray("segment");
-                            double start = seg.getDouble(0);
-                            double end = seg.getDouble(1);
-                            segments.add(new Segment(start, end, category));
-                        }
+                    JSONArray arr = new JSONArray(response.body());
+                    for (int i = 0; i < arr.length(); i++) {
+                        JSONObject obj = arr.getJSONObject(i);
+                        String category = obj.optString("category", "unknown");
+                        JSONArray seg = obj.getJSONArray("segment");
+                        double start = seg.getDouble(0);
+                        double end = seg.getDouble(1);
+                        segments.add(new Segment(start, end, category));
                     }
-                } catch (Exception e) {
-                    e.printStackTrace(); // Log or handle error
+                } catch (JSONException e) {
+                    LOGGER.warn("Failed to parse SponsorBlock segments for {}: {}", videoId, e.getMessage());
+                    throw new CompletionException(e);
                 }
                 return segments;
             });
@@ -59,4 +209,115 @@ public class SponsorBlockClient {
             this.category = category;
         }
     }
+
+    private static class CacheEntry {
+        private final SkipIndex index;
+        private final long fetched;
+
+        private CacheEntry(SkipIndex index, long fetched) {
+            this.index = index;
+            this.fetched = fetched;
+        }
+
+        private boolean isExpired(long now, long ttlMillis) {
+            return now - fetched > ttlMillis;
+        }
+    }
+
+    /**
+     * Immutable, sorted table of the millisecond ranges to skip in a track.
+     * Overlapping and adjacent segments are merged, so the ranges never overlap
+     * and both the start and end arrays are ascending.
+     */
+    public static final class SkipIndex {
+        public static final SkipIndex EMPTY = new SkipIndex(new long[0], new long[0]);
+
+        private final long[] starts;
+        private final long[] ends;
+
+        private SkipIndex(long[] starts, long[] ends) {
+            this.starts = starts;
+            this.ends = ends;
+        }
+
+        public static SkipIndex of(List<Segment> segments) {
+            if (segments == null || segments.isEmpty())
+                return EMPTY;
+            long[][] ranges = new long[segments.size()][];
+            int n = 0;
+            for (Segment seg : segments) {
+                long start = (long)(seg.start * 1000);
+                long end = (long)(seg.end * 1000);
+                if (end > start)
+                    ranges[n++] = new long[]{start, end};
+            }
+            if (n == 0)
+                return EMPTY;
+            Arrays.sort(ranges, 0, n, (a, b) -> Long.compare(a[0], b[0]));
+            long[] starts = new long[n];
+            long[] ends = new long[n];
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                if (size > 0 && ranges[i][0] <= ends[size - 1]) {
+                    ends[size - 1] = Math.max(ends[size - 1], ranges[i][1]);
+                } else {
+                    starts[size] = ranges[i][0];
+                    ends[size] = ranges[i][1];
+                    size++;
+                }
+            }
+            return new SkipIndex(Arrays.copyOf(starts, size), Arrays.copyOf(ends, size));
+        }
+
+        public int size() {
+            return starts.length;
+        }
+
+        public boolean isEmpty() {
+            return starts.length == 0;
+        }
+
+        public long start(int index) {
+            return starts[index];
+        }
+
+        public long end(int index) {
+            return ends[index];
+        }
+
+        private JSONArray toJson() {
+            JSONArray arr = new JSONArray();
+            for (int i = 0; i < starts.length; i++)
+                arr.put(new JSONArray().put(starts[i]).put(ends[i]));
+            return arr;
+        }
+
+        private static SkipIndex fromJson(JSONArray arr) {
+            if (arr.length() == 0)
+                return EMPTY;
+            long[] starts = new long[arr.length()];
+            long[] ends = new long[arr.length()];
+            for (int i = 0; i < arr.length(); i++) {
+                starts[i] = arr.getJSONArray(i).getLong(0);
+                ends[i] = arr.getJSONArray(i).getLong(1);
+            }
+            return new SkipIndex(starts, ends);
+        }
+
+        /**
+         * @return the index of the first range that ends after the given position,
+         *         or {@link #size()} if every range ends at or before it
+         */
+        public int indexAfter(long positionMs) {
+            int low = 0, high = ends.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (ends[mid] <= positionMs)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return low;
+        }
+    }
 }
@@ -0,0 +1,205 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An append-only temporary file of encoded tracks, memory-mapped in fixed-size
+ * regions, which holds queue entries far from the head off the heap. Rewinding
+ * reuses the file from the start and invalidates everything written before.
+ * A queue that never empties, such as one on repeat, is instead compacted:
+ * every half region written, the records still in use are moved to the start
+ * of the file if they fill no more than half of it.
+ */
+public class TrackSpill implements Closeable
+{
+    private static final int REGION_SIZE = 8 * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final List<MappedByteBuffer> regions = new ArrayList<>();
+    private long position = 0;
+    private int generation = 0;
+    // the position at which to look for dead records again
+    private long compactAt = REGION_SIZE / 2;
+    private boolean closed = false;
+
+    public TrackSpill() throws IOException
+    {
+        file = Files.createTempFile("jmusicbot-queue-", ".bin");
+        file.toFile().deleteOnExit();
+        channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * @param data the encoded track
+     * @return where the data was written, or null if it could not be
+     */
+    public synchronized Entry write(byte[] data) throws IOException
+    {
+        if(closed || data.length > REGION_SIZE)
+            return null;
+        int region = (int) (position / REGION_SIZE);
+        int offset = (int) (position % REGION_SIZE);
+        if(offset + data.length > REGION_SIZE)
+        {
+            region++;
+            offset = 0;
+        }
+        while(regions.size() <= region)
+            regions.add(channel.map(FileChannel.MapMode.READ_WRITE, (long) regions.size() * REGION_SIZE, REGION_SIZE));
+        ByteBuffer buffer = regions.get(region).duplicate();
+        buffer.position(offset);
+        buffer.put(data);
+        position = (long) region * REGION_SIZE + offset + data.length;
+        return new Entry(region, offset, data.length, generation);
+    }
+
+    /**
+     * @return true once enough has been written since the last compaction to
+     *         make looking for dead records worthwhile
+     */
+    public synchronized boolean wantsCompaction()
+    {
+        return !closed && position >= compactAt;
+    }
+
+    /**
+     * Moves the records still in use to the start of the file, in the order
+     * they were written, and invalidates every other record. Nothing is moved
+     * if the records in use fill more than half of what has been written; the
+     * file then keeps growing until the next compaction.
+     *
+     * @param live every record that may still be read; records from before
+     *        the last rewind or compaction are ignored
+     * @return true if the file was compacted
+     */
+    public synchronized boolean compact(List<Entry> live)
+    {
+        if(closed)
+            return false;
+        List<Entry> current = new ArrayList<>(live.size());
+        long used = 0;
+        for(Entry entry: live)
+        {
+            if(entry.generation == generation)
+            {
+                current.add(entry);
+                used += entry.length;
+            }
+        }
+        if(used * 2 > position)
+        {
+            compactAt = position + REGION_SIZE / 2;
+            return false;
+        }
+        current.sort(Comparator.comparingLong(entry -> (long) entry.region * REGION_SIZE + entry.offset));
+        generation++;
+        long cursor = 0;
+        for(Entry entry: current)
+        {
+            byte[] data = new byte[entry.length];
+            ByteBuffer source = regions.get(entry.region).duplicate();
+            source.position(entry.offset);
+            source.get(data);
+            // the records are moved towards the start in order, so none is
+            // overwritten before it has been moved
+            int region = (int) (cursor / REGION_SIZE);
+            int offset = (int) (cursor % REGION_SIZE);
+            if(offset + data.length > REGION_SIZE)
+            {
+                region++;
+                offset = 0;
+            }
+            ByteBuffer target = regions.get(region).duplicate();
+            target.position(offset);
+            target.put(data);
+            entry.region = region;
+            entry.offset = offset;
+            entry.generation = generation;
+            cursor = (long) region * REGION_SIZE + offset + data.length;
+        }
+        position = cursor;
+        compactAt = position + REGION_SIZE / 2;
+        return true;
+    }
+
+    /**
+     * @return the data, or null if the file was rewound, compacted without
+     *         this record, or closed since it was written
+     */
+    public synchronized byte[] read(Entry entry)
+    {
+        if(closed || entry.generation != generation)
+            return null;
+        byte[] data = new byte[entry.length];
+        ByteBuffer buffer = regions.get(entry.region).duplicate();
+        buffer.position(entry.offset);
+        buffer.get(data);
+        return data;
+    }
+
+    public synchronized void rewind()
+    {
+        position = 0;
+        generation++;
+        compactAt = REGION_SIZE / 2;
+    }
+
+    /**
+     * @return the number of bytes written since the last rewind or compaction
+     */
+    public synchronized long getPosition()
+    {
+        return position;
+    }
+
+    /**
+     * @return the number of bytes currently mapped
+     */
+    public synchronized long getMappedSize()
+    {
+        return (long) regions.size() * REGION_SIZE;
+    }
+
+    @Override
+    public synchronized void close()
+    {
+        closed = true;
+        regions.clear();
+        try
+        {
+            channel.close();
+            Files.deleteIfExists(file);
+        }
+        catch(IOException ignore)
+        {
+            // some platforms keep the file locked until the mappings are collected;
+            // deleteOnExit() still removes it
+        }
+    }
+
+    public static final class Entry
+    {
+        private final int length;
+        // moved by compact(), under the spill's lock
+        private int region, offset, generation;
+
+        private Entry(int region, int offset, int length, int generation)
+        {
+            this.region = region;
+            this.offset = offset;
+            this.length = length;
+            this.generation = generation;
+        }
+    }
+}
@@ -58,14 +58,16 @@ public abstract class MusicCommand extends Command
             event.replyInDm(event.getClient().getError()+" You can only use that command in "+tchannel.getAsMention()+"!");
             return;
         }
-        bot.getPlayerManager().setUpHandler(event.getGuild()); // no point constantly checking for this later
-        if(bePlaying && !((AudioHandler)event.getGuild().getAudioManager().getSendingHandler()).isMusicPlaying(event.getJDA()))
+        AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
+        if(bePlaying && (handler==null || !handler.isMusicPlaying(event.getJDA())))
         {
             event.reply(event.getClient().getError()+" There must be music playing to use that!");
             return;
         }
         if(beListening)
         {
+            // only commands that can start playback need a player; read-only commands cope without one
+            bot.getPlayerManager().setUpHandler(event.getGuild());
             VoiceChannel current = event.getGuild().getSelfMember().getVoiceState().getChannel() != null ?
                 event.getGuild().getSelfMember().getVoiceState().getChannel().asVoiceChannel() : null;
             if(current==null)
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 John Grosh <john.a.grosh@gmail.com>.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.jagrosh.jmusicbot.commands.admin;
+
+import com.jagrosh.jdautilities.command.CommandEvent;
+import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.commands.AdminCommand;
+import com.jagrosh.jmusicbot.settings.Settings;
+
+public class DuplicatesCmd extends AdminCommand
+{
+    public DuplicatesCmd(Bot bot)
+    {
+        this.name = "setduplicates";
+        this.help = "sets whether songs already in the queue can be added again";
+        this.arguments = "<allow|reject>";
+        this.aliases = bot.getConfig().getAliases(this.name);
+    }
+
+    @Override
+    protected void execute(CommandEvent event)
+    {
+        Settings s = event.getClient().getSettingsFor(event.getGuild());
+        if(event.getArgs().isEmpty())
+        {
+            event.reply("Songs already in the queue are currently "+(s.getRejectDuplicates() ? "`rejected`" : "`allowed`")+".");
+            return;
+        }
+        boolean reject;
+        if(event.getArgs().equalsIgnoreCase("reject"))
+            reject = true;
+        else if(event.getArgs().equalsIgnoreCase("allow"))
+            reject = false;
+        else
+        {
+            event.replyError("Valid options are `allow` or `reject`.");
+            return;
+        }
+        s.setRejectDuplicates(reject);
+        event.replySuccess("Songs already in the queue will now be "+(reject ? "rejected" : "allowed")+" on *"+event.getGuild().getName()+"*");
+    }
+}
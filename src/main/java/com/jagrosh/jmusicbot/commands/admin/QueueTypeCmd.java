@@ -53,7 +53,7 @@ public class QueueTypeCmd extends AdminCommand
 
         try
         {
-            value = QueueType.valueOf(args.toUpperCase());
+            value = QueueType.valueOf(args.toUpperCase().replace('-', '_'));
         }
         catch (IllegalArgumentException e)
         {
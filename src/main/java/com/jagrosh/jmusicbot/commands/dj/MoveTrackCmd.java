@@ -73,7 +73,7 @@ public class MoveTrackCmd extends DJCommand
 
         // Move the track
         QueuedTrack track = queue.moveItem(from - 1, to - 1);
-        String trackTitle = track.getTrack().getInfo().title;
+        String trackTitle = track.getTitle();
         String reply = String.format("Moved **%s** from position `%d` to `%d`.", trackTitle, from, to);
         event.replySuccess(reply);
     }
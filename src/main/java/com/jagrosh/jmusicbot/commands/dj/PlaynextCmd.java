@@ -19,6 +19,7 @@ import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
+import com.jagrosh.jmusicbot.audio.QueueQuota;
 import com.jagrosh.jmusicbot.audio.RequestMetadata;
 import com.jagrosh.jmusicbot.commands.DJCommand;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
@@ -85,7 +86,14 @@ public class PlaynextCmd extends DJCommand
                 return;
             }
             AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-            int pos = handler.addTrackToFront(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)))+1;
+            QueueQuota.Result result = handler.addTrackToFront(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)));
+            if(result.getAdded()==0)
+            {
+                m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" **"+track.getInfo().title+"** was not added because "
+                        + (result.getDuplicates()>0 ? "it is already in the queue" : bot.getConfig().getQueueQuota().describe(result.getLimit())))).queue();
+                return;
+            }
+            int pos = result.getPosition()+1;
             String addMsg = FormatUtil.filter(event.getClient().getSuccess()+" Added **"+track.getInfo().title
                     +"** (`"+ TimeUtil.formatTime(track.getDuration())+"`) "+(pos==0?"to begin playing":" to the queue at position "+pos));
             m.editMessage(addMsg).queue();
@@ -42,7 +42,8 @@ public class StopCmd extends DJCommand
         org.slf4j.LoggerFactory.getLogger("StopCmd").warn("VOICE DISCONNECT: Stop command executed by {} in guild {}", event.getAuthor().getName(), event.getGuild().getName());
 
         AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-        handler.stopAndClear();
+        if(handler != null)
+            handler.stopAndClear();
         event.getGuild().getAudioManager().closeAudioConnection();
         event.reply(event.getClient().getSuccess()+" The player has stopped and the queue has been cleared.");
     }
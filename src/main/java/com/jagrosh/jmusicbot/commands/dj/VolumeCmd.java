@@ -42,7 +42,7 @@ public class VolumeCmd extends DJCommand
     {
         AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
         Settings settings = event.getClient().getSettingsFor(event.getGuild());
-        int volume = handler.getPlayer().getVolume();
+        int volume = handler == null ? settings.getVolume() : handler.getPlayer().getVolume();
         if(event.getArgs().isEmpty())
         {
             event.reply(FormatUtil.volumeIcon(volume)+" Current volume is `"+volume+"`");
@@ -59,7 +59,8 @@ public class VolumeCmd extends DJCommand
                 event.reply(event.getClient().getError()+" Volume must be a valid integer between 0 and 150!");
             else
             {
-                handler.getPlayer().setVolume(nvolume);
+                if(handler != null)
+                    handler.getPlayer().setVolume(nvolume);
                 settings.setVolume(nvolume);
                 event.reply(FormatUtil.volumeIcon(nvolume)+" Volume changed from `"+volume+"` to `"+nvolume+"`");
             }
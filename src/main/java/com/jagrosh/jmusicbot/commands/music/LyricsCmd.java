@@ -48,7 +48,7 @@ public class LyricsCmd extends MusicCommand
         if(event.getArgs().isEmpty())
         {
             AudioHandler sendingHandler = (AudioHandler) event.getGuild().getAudioManager().getSendingHandler();
-            if (sendingHandler.isMusicPlaying(event.getJDA()))
+            if (sendingHandler != null && sendingHandler.isMusicPlaying(event.getJDA()))
                 title = sendingHandler.getPlayer().getPlayingTrack().getInfo().title;
             else
             {
@@ -41,10 +41,12 @@ public class NowplayingCmd extends MusicCommand
     public void doCommand(CommandEvent event)
     {
         AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-        MessageCreateData m = handler.getNowPlaying(event.getJDA());
+        MessageCreateData m = handler == null ? null : handler.getNowPlaying(event.getJDA());
         if(m==null)
         {
-            event.reply(handler.getNoMusicPlaying(event.getJDA()));
+            event.reply(handler == null
+                    ? AudioHandler.getNoMusicPlaying(event.getGuild(), bot.getConfig().getSuccess(), bot.getSettingsManager().getSettings(event.getGuild()).getVolume())
+                    : handler.getNoMusicPlaying(event.getJDA()));
             bot.getNowplayingHandler().clearLastNPMessage(event.getGuild());
         }
         else
@@ -26,12 +26,21 @@ import com.jagrosh.jdautilities.command.Command;
 import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
+import com.jagrosh.jmusicbot.audio.LazyPlaylist;
+import com.jagrosh.jmusicbot.audio.QueueQuota;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
 import com.jagrosh.jmusicbot.commands.DJCommand;
 import com.jagrosh.jmusicbot.commands.MusicCommand;
 import com.jagrosh.jmusicbot.playlist.PlaylistLoader.Playlist;
+import com.jagrosh.jmusicbot.playlist.PlaylistLoader.PlaylistLoadError;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
@@ -47,6 +56,8 @@ public class PlayCmd extends MusicCommand
 {
     private final static String LOAD = "\uD83D\uDCE5"; // 📥
     private final static String CANCEL = "\uD83D\uDEAB"; // 🚫
+    // how often the loading message of a playlist is updated, in milliseconds
+    private final static long PROGRESS_INTERVAL = 3000;
 
     private final String loadingEmoji;
 
@@ -91,7 +102,44 @@ public class PlayCmd extends MusicCommand
         String args = event.getArgs().startsWith("<") && event.getArgs().endsWith(">")
                 ? event.getArgs().substring(1,event.getArgs().length()-1)
                 : event.getArgs().isEmpty() ? event.getMessage().getAttachments().get(0).getUrl() : event.getArgs();
-        event.reply(loadingEmoji+" Loading... `["+args+"]`", m -> bot.getPlayerManager().loadItemOrdered(event.getGuild(), args, new ResultHandler(m,event,false)));
+        event.reply(loadingEmoji+" Loading... `["+args+"]`", m ->
+        {
+            ResultHandler incremental = new ResultHandler(m,event,false,true);
+            if(!bot.getPlayerManager().loadPlaylistIncrementally(event.getGuild(), args, incremental, incremental::morePages))
+                bot.getPlayerManager().loadItemOrdered(event.getGuild(), args, new ResultHandler(m,event,false));
+        });
+    }
+
+    /**
+     * Edits a lazy playlist's message once the playlist has stopped loading,
+     * to say how many tracks were added and which were left out
+     */
+    private LazyPlaylist.Report lazyReport(Message m, CommandEvent event)
+    {
+        return playlist ->
+        {
+            String label = playlist.getName()==null ? "the playlist" : "playlist **"+playlist.getName()+"**";
+            StringBuilder builder = new StringBuilder(playlist.getAdded()==0
+                    ? event.getClient().getWarning()+" No tracks from "+label+" were added!"
+                    : event.getClient().getSuccess()+" Added **"+playlist.getAdded()+"** tracks from "+label+" to the queue!");
+            if(playlist.getLimit()!=null)
+                builder.append("\n").append(event.getClient().getWarning()).append(" The rest of the playlist was not added because ")
+                        .append(bot.getConfig().getQueueQuota().describe(playlist.getLimit()));
+            if(playlist.getDuplicates()>0)
+                builder.append("\n").append(event.getClient().getWarning()).append(" **").append(playlist.getDuplicates())
+                        .append("** tracks already in the queue were skipped.");
+            if(playlist.getOmitted()>0)
+                builder.append("\n").append(event.getClient().getWarning()).append(" **").append(playlist.getOmitted())
+                        .append("** tracks longer than the allowed maximum (`").append(bot.getConfig().getMaxTime()).append("`) were omitted.");
+            List<PlaylistLoadError> errors = playlist.getErrors();
+            if(!errors.isEmpty())
+                builder.append("\nThe following tracks failed to load:");
+            errors.forEach(err -> builder.append("\n`[").append(err.getIndex()+1).append("]` **").append(err.getItem()).append("**: ").append(err.getReason()));
+            String str = builder.toString();
+            if(str.length()>2000)
+                str = str.substring(0,1994)+" (...)";
+            m.editMessage(FormatUtil.filter(str)).queue();
+        };
     }
 
     private class ResultHandler implements AudioLoadResultHandler
@@ -99,12 +147,22 @@ public class PlayCmd extends MusicCommand
         private final Message m;
         private final CommandEvent event;
         private final boolean ytsearch;
+        // the playlist is only a first page, and the rest comes to morePages()
+        private final boolean incremental;
+        private AudioHandler lazyHandler;
+        private LazyPlaylist lazy;
 
         private ResultHandler(Message m, CommandEvent event, boolean ytsearch)
+        {
+            this(m, event, ytsearch, false);
+        }
+
+        private ResultHandler(Message m, CommandEvent event, boolean ytsearch, boolean incremental)
         {
             this.m = m;
             this.event = event;
             this.ytsearch = ytsearch;
+            this.incremental = incremental;
         }
 
         private void loadSingle(AudioTrack track, AudioPlaylist playlist)
@@ -116,7 +174,14 @@ public class PlayCmd extends MusicCommand
                 return;
             }
             AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-            int pos = handler.addTrack(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)))+1;
+            QueueQuota.Result result = handler.addTracks(Collections.singletonList(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event))));
+            if(result.getAdded()==0)
+            {
+                m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" **"+track.getInfo().title+"** was not added because "
+                        + (result.getDuplicates()>0 ? "it is already in the queue" : bot.getConfig().getQueueQuota().describe(result.getLimit())))).queue();
+                return;
+            }
+            int pos = result.getPosition()+1;
             String addMsg = FormatUtil.filter(event.getClient().getSuccess()+" Added **"+track.getInfo().title
                     +"** (`"+ TimeUtil.formatTime(track.getDuration())+"`) "+(pos==0?"to begin playing":" to the queue at position "+pos));
             if(playlist==null || !event.getSelfMember().hasPermission((TextChannel) event.getChannel(), Permission.MESSAGE_ADD_REACTION))
@@ -134,7 +199,9 @@ public class PlayCmd extends MusicCommand
                              (e.getReaction().getEmoji().getName().equals(LOAD) || e.getReaction().getEmoji().getName().equals(CANCEL)),
                         e -> {
                             if(e.getReaction().getEmoji().getName().equals(LOAD)) {
-                                msg.editMessage(addMsg+"\n"+event.getClient().getSuccess()+" Loaded **"+loadPlaylist(playlist, track)+"** additional tracks!").queue();
+                                QueueQuota.Result loaded = loadPlaylist(playlist, track);
+                                msg.editMessage(FormatUtil.filter(addMsg+"\n"+event.getClient().getSuccess()+" Loaded **"+loaded.getAdded()+"** additional tracks!"
+                                        + skippedWarning(loaded))).queue();
                             } else {
                                 msg.editMessage(addMsg).queue();
                             }
@@ -150,18 +217,25 @@ public class PlayCmd extends MusicCommand
             }
         }
 
-        private int loadPlaylist(AudioPlaylist playlist, AudioTrack exclude)
+        private QueueQuota.Result loadPlaylist(AudioPlaylist playlist, AudioTrack exclude)
         {
-            int[] count = {0};
-            playlist.getTracks().stream().forEach((track) -> {
+            RequestMetadata rm = RequestMetadata.fromPlaylist(event);
+            List<QueuedTrack> tracks = new ArrayList<>(playlist.getTracks().size());
+            for(AudioTrack track: playlist.getTracks())
+            {
                 if(!bot.getConfig().isTooLong(track) && !track.equals(exclude))
-                {
-                    AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-                    handler.addTrack(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)));
-                    count[0]++;
-                }
-            });
-            return count[0];
+                    tracks.add(new QueuedTrack(track, rm));
+            }
+            AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
+            return handler.addTracks(tracks);
+        }
+
+        private String skippedWarning(QueueQuota.Result result)
+        {
+            return (result.getDuplicates()==0 ? "" : "\n"+event.getClient().getWarning()+" `"+result.getDuplicates()
+                    + "` entries already in the queue were skipped.")
+                    + (result.getLimit()==null ? "" : "\n"+event.getClient().getWarning()+" Only `"+result.getAdded()+"` entries were added because "
+                    + bot.getConfig().getQueueQuota().describe(result.getLimit()));
         }
 
         @Override
@@ -183,14 +257,39 @@ public class PlayCmd extends MusicCommand
                 AudioTrack single = playlist.getSelectedTrack();
                 loadSingle(single, playlist);
             }
+            else if(bot.getConfig().getPlaylistLookahead() > 0 && playlist.getTracks().size() > 0
+                    && (incremental || playlist.getTracks().size() > bot.getConfig().getPlaylistLookahead()))
+            {
+                lazyHandler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
+                lazy = new LazyPlaylist(playlist.getName(), incremental ? new LazyPlaylist.Tracks(playlist.getTracks(), false)
+                        : LazyPlaylist.Source.of(playlist.getTracks()), RequestMetadata.fromPlaylist(event), bot.getConfig().getPlaylistLookahead(),
+                        lazyReport(m, event));
+                // sent before the first item is queued, so a report on that item replaces it
+                m.editMessage(FormatUtil.filter(event.getClient().getSuccess()+" Found "
+                        +(playlist.getName()==null?"a playlist":"playlist **"+playlist.getName()+"**")+" with `"
+                        + playlist.getTracks().size()+"` entries"+(incremental ? " so far" : "")+"; they will be added to the queue as it plays!"
+                        + (incremental ? "\n"+loadingEmoji+" Loading the rest of the playlist..." : ""))).queue();
+                lazyHandler.addLazyPlaylist(lazy);
+            }
             else
             {
-                int count = loadPlaylist(playlist, null);
+                QueueQuota.Result result = loadPlaylist(playlist, null);
+                int count = result.getAdded();
                 if(playlist.getTracks().size() == 0)
                 {
                     m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" The playlist "+(playlist.getName()==null ? "" : "(**"+playlist.getName()
                             +"**) ")+" could not be loaded or contained 0 entries")).queue();
                 }
+                else if(count==0 && result.getLimit()!=null)
+                {
+                    m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" The playlist "+(playlist.getName()==null ? "" : "(**"+playlist.getName()
+                            +"**) ")+"was not added because "+bot.getConfig().getQueueQuota().describe(result.getLimit()))).queue();
+                }
+                else if(count==0 && result.getDuplicates()>0)
+                {
+                    m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" The playlist "+(playlist.getName()==null ? "" : "(**"+playlist.getName()
+                            +"**) ")+"was not added because its entries are already in the queue")).queue();
+                }
                 else if(count==0)
                 {
                     m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" All entries in this playlist "+(playlist.getName()==null ? "" : "(**"+playlist.getName()
@@ -201,12 +300,29 @@ public class PlayCmd extends MusicCommand
                     m.editMessage(FormatUtil.filter(event.getClient().getSuccess()+" Found "
                             +(playlist.getName()==null?"a playlist":"playlist **"+playlist.getName()+"**")+" with `"
                             + playlist.getTracks().size()+"` entries; added to the queue!"
-                            + (count<playlist.getTracks().size() ? "\n"+event.getClient().getWarning()+" Tracks longer than the allowed maximum (`"
+                            + skippedWarning(result)
+                            + (result.getLimit()==null && count+result.getDuplicates()<playlist.getTracks().size() ? "\n"+event.getClient().getWarning()+" Tracks longer than the allowed maximum (`"
                             + bot.getConfig().getMaxTime()+"`) have been omitted." : ""))).queue();
                 }
             }
         }
 
+        /**
+         * Adds the tracks on the pages after the first to the playlist that
+         * {@link #playlistLoaded(AudioPlaylist)} started playing
+         */
+        private void morePages(List<AudioTrack> tracks)
+        {
+            if(lazy == null)
+                return;
+            // a playlist that already stopped has been reported on
+            if(!lazy.isFinished())
+                m.editMessage(FormatUtil.filter(event.getClient().getSuccess()+" Found "
+                        +(lazy.getName()==null?"a playlist":"playlist **"+lazy.getName()+"**")+" with `"
+                        + (lazy.getSource().size()+tracks.size())+"` entries; they will be added to the queue as it plays!")).queue();
+            lazyHandler.extendLazyPlaylist(lazy, tracks, true);
+        }
+
         @Override
         public void noMatches()
         {
@@ -253,13 +369,49 @@ public class PlayCmd extends MusicCommand
                 event.replyError("I could not find `"+event.getArgs()+".txt` in the Playlists folder.");
                 return;
             }
+            if(bot.getConfig().getPlaylistLookahead() > 0 && playlist.getItems().size() > bot.getConfig().getPlaylistLookahead())
+            {
+                AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
+                event.reply(event.getClient().getSuccess()+" Playing playlist **"+event.getArgs()+"** ("+playlist.getItems().size()
+                        + " items); tracks are added to the queue as it plays!", m ->
+                    handler.addLazyPlaylist(new LazyPlaylist(playlist.getName(), LazyPlaylist.Source.of(playlist, bot.getPlayerManager()),
+                            RequestMetadata.fromPlaylist(event), bot.getConfig().getPlaylistLookahead(), lazyReport(m, event))));
+                return;
+            }
             event.getChannel().sendMessage(loadingEmoji+" Loading playlist **"+event.getArgs()+"**... ("+playlist.getItems().size()+" items)").queue(m ->
             {
                 AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-                playlist.loadTracks(bot.getPlayerManager(), (at)->handler.addTrack(new QueuedTrack(at, RequestMetadata.fromResultHandler(at, event))), () -> {
-                    StringBuilder builder = new StringBuilder(playlist.getTracks().isEmpty()
+                RequestMetadata rm = RequestMetadata.fromPlaylist(event);
+                AtomicInteger rejected = new AtomicInteger();
+                AtomicInteger duplicates = new AtomicInteger();
+                AtomicReference<QueueQuota.Limit> limit = new AtomicReference<>();
+                AtomicLong lastProgress = new AtomicLong(System.currentTimeMillis());
+                playlist.loadTracks(bot.getPlayerManager(), (at)->
+                {
+                    QueueQuota.Result result = handler.addTracks(Collections.singletonList(new QueuedTrack(at, rm)));
+                    if(result.getLimit()!=null)
+                    {
+                        rejected.incrementAndGet();
+                        limit.set(result.getLimit());
+                    }
+                    duplicates.addAndGet(result.getDuplicates());
+                }, (done)->
+                {
+                    long now = System.currentTimeMillis();
+                    long last = lastProgress.get();
+                    if(done < playlist.getItems().size() && now - last >= PROGRESS_INTERVAL && lastProgress.compareAndSet(last, now))
+                        m.editMessage(FormatUtil.filter(loadingEmoji+" Loading playlist **"+event.getArgs()+"**... ("+done+"/"+playlist.getItems().size()+" items)")).queue();
+                }, () -> {
+                    int loaded = playlist.getTracks().size() - rejected.get() - duplicates.get();
+                    StringBuilder builder = new StringBuilder(loaded==0
                             ? event.getClient().getWarning()+" No tracks were loaded!"
-                            : event.getClient().getSuccess()+" Loaded **"+playlist.getTracks().size()+"** tracks!");
+                            : event.getClient().getSuccess()+" Loaded **"+loaded+"** tracks!");
+                    if(limit.get()!=null)
+                        builder.append("\n").append(event.getClient().getWarning()).append(" **").append(rejected.get())
+                                .append("** tracks were not added because ").append(bot.getConfig().getQueueQuota().describe(limit.get()));
+                    if(duplicates.get()>0)
+                        builder.append("\n").append(event.getClient().getWarning()).append(" **").append(duplicates.get())
+                                .append("** tracks already in the queue were skipped.");
                     if(!playlist.getErrors().isEmpty())
                         builder.append("\nThe following tracks failed to load:");
                     playlist.getErrors().forEach(err -> builder.append("\n`[").append(err.getIndex()+1).append("]` **").append(err.getItem()).append("**: ").append(err.getReason()));
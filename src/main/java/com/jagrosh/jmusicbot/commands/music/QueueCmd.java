@@ -18,7 +18,6 @@ package com.jagrosh.jmusicbot.commands.music;
 import java.util.List;
 import java.util.concurrent.TimeUnit;
 import com.jagrosh.jdautilities.command.CommandEvent;
-import com.jagrosh.jdautilities.menu.Paginator;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
@@ -28,9 +27,14 @@ import com.jagrosh.jmusicbot.settings.RepeatMode;
 import com.jagrosh.jmusicbot.settings.Settings;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
 import com.jagrosh.jmusicbot.utils.TimeUtil;
+import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.utils.messages.MessageCreateBuilder;
 import net.dv8tion.jda.api.utils.messages.MessageCreateData;
+import net.dv8tion.jda.api.utils.messages.MessageEditData;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.emoji.Emoji;
+import net.dv8tion.jda.api.events.message.react.MessageReactionAddEvent;
 import net.dv8tion.jda.api.exceptions.PermissionException;
 
 /**
@@ -39,7 +43,10 @@ import net.dv8tion.jda.api.exceptions.PermissionException;
  */
 public class QueueCmd extends MusicCommand
 {
-    private final Paginator.Builder builder;
+    private final static String LEFT = "\u25C0"; // ◀
+    private final static String STOP = "\u23F9"; // ⏹
+    private final static String RIGHT = "\u25B6"; // ▶
+    private final static int ITEMS_PER_PAGE = 10;
 
     public QueueCmd(Bot bot)
     {
@@ -50,16 +57,6 @@ public class QueueCmd extends MusicCommand
         this.aliases = bot.getConfig().getAliases(this.name);
         this.bePlaying = true;
         this.botPermissions = new Permission[]{Permission.MESSAGE_ADD_REACTION,Permission.MESSAGE_EMBED_LINKS};
-        builder = new Paginator.Builder()
-                .setColumns(1)
-                .setFinalAction(m -> {try{m.clearReactions().queue();}catch(PermissionException ignore){}})
-                .setItemsPerPage(10)
-                .waitOnSinglePage(false)
-                .useNumberedItems(true)
-                .showPageNumbers(true)
-                .wrapPageEnds(true)
-                .setEventWaiter(bot.getWaiter())
-                .setTimeout(1, TimeUnit.MINUTES);
     }
 
     @Override
@@ -87,21 +84,65 @@ public class QueueCmd extends MusicCommand
             });
             return;
         }
-        String[] songs = new String[list.size()];
-        long total = 0;
-        for(int i=0; i<list.size(); i++)
-        {
-            total += list.get(i).getTrack().getDuration();
-            songs[i] = list.get(i).toString();
-        }
         Settings settings = event.getClient().getSettingsFor(event.getGuild());
-        long fintotal = total;
-        builder.setText((i1,i2) -> getQueueTitle(ah, event.getClient().getSuccess(), songs.length, fintotal, settings.getRepeatMode(), settings.getQueueType()))
-                .setItems(songs)
-                .setUsers(event.getAuthor())
-                .setColor(event.getSelfMember().getColor())
-                ;
-        builder.build().paginate(event.getChannel(), pagenum);
+        String title = getQueueTitle(ah, event.getClient().getSuccess(), list.size(), ah.getQueue().getTotalDuration(), settings.getRepeatMode(), settings.getQueueType());
+        int pages = (list.size() + ITEMS_PER_PAGE - 1) / ITEMS_PER_PAGE;
+        int page = Math.min(Math.max(pagenum, 1), pages);
+        event.getChannel().sendMessage(renderPage(event, title, list, page, pages)).queue(m ->
+        {
+            if(pages == 1)
+                return;
+            m.addReaction(Emoji.fromUnicode(LEFT)).queue();
+            m.addReaction(Emoji.fromUnicode(STOP)).queue();
+            m.addReaction(Emoji.fromUnicode(RIGHT)).queue(v -> waitForPage(event, m, title, list, page, pages));
+        });
+    }
+
+    // only the entries on the page being shown are turned into text
+    private MessageCreateData renderPage(CommandEvent event, String title, List<QueuedTrack> list, int page, int pages)
+    {
+        StringBuilder sb = new StringBuilder();
+        for(int i=(page-1)*ITEMS_PER_PAGE; i<page*ITEMS_PER_PAGE && i<list.size(); i++)
+            sb.append("`").append(i+1).append(".` ").append(list.get(i)).append("\n");
+        return new MessageCreateBuilder()
+                .setContent(title)
+                .setEmbeds(new EmbedBuilder()
+                        .setColor(event.getSelfMember().getColor())
+                        .setDescription(sb.toString())
+                        .setFooter("Page "+page+"/"+pages)
+                        .build())
+                .build();
+    }
+
+    private void waitForPage(CommandEvent event, Message m, String title, List<QueuedTrack> list, int page, int pages)
+    {
+        bot.getWaiter().waitForEvent(MessageReactionAddEvent.class,
+            e -> e.getMessageIdLong() == m.getIdLong() &&
+                 event.getAuthor().equals(e.getUser()) &&
+                 (e.getReaction().getEmoji().getName().equals(LEFT)
+                    || e.getReaction().getEmoji().getName().equals(STOP)
+                    || e.getReaction().getEmoji().getName().equals(RIGHT)),
+            e -> {
+                String emoji = e.getReaction().getEmoji().getName();
+                if(emoji.equals(STOP))
+                {
+                    clearReactions(m);
+                    return;
+                }
+                // wraps around at either end
+                int next = emoji.equals(LEFT) ? (page == 1 ? pages : page - 1) : (page == pages ? 1 : page + 1);
+                try { e.getReaction().removeReaction(e.getUser()).queue(); } catch(PermissionException ignore) {}
+                m.editMessage(MessageEditData.fromCreateData(renderPage(event, title, list, next, pages)))
+                        .queue(edited -> waitForPage(event, edited, title, list, next, pages));
+            },
+            1, TimeUnit.MINUTES,
+            () -> clearReactions(m)
+        );
+    }
+
+    private static void clearReactions(Message m)
+    {
+        try { m.clearReactions().queue(); } catch(PermissionException ignore) {}
     }
 
     private String getQueueTitle(AudioHandler ah, String success, int songslength, long total, RepeatMode repeatmode, QueueType queueType)
@@ -112,8 +153,9 @@ public class QueueCmd extends MusicCommand
             sb.append(ah.getStatusEmoji()).append(" **")
                     .append(ah.getPlayer().getPlayingTrack().getInfo().title).append("**\n");
         }
+        int lazy = ah.getLazyRemaining();
         return FormatUtil.filter(sb.append(success).append(" Current Queue | ").append(songslength)
-                .append(" entries | `").append(TimeUtil.formatTime(total)).append("` ")
+                .append(" entries").append(lazy > 0 ? " (+"+lazy+" to load)" : "").append(" | `").append(TimeUtil.formatTime(total)).append("` ")
                 .append("| ").append(queueType.getEmoji()).append(" `").append(queueType.getUserFriendlyName()).append('`')
                 .append(repeatmode.getEmoji() != null ? " | "+repeatmode.getEmoji() : "").toString());
     }
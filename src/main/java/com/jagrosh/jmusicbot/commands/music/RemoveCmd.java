@@ -21,6 +21,7 @@ import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
 import com.jagrosh.jmusicbot.commands.MusicCommand;
 import com.jagrosh.jmusicbot.settings.Settings;
+import java.util.List;
 import net.dv8tion.jda.api.Permission;
 import net.dv8tion.jda.api.entities.User;
 
@@ -35,7 +36,7 @@ public class RemoveCmd extends MusicCommand
         super(bot);
         this.name = "remove";
         this.help = "removes a song from the queue";
-        this.arguments = "<position|ALL>";
+        this.arguments = "<position|URL|ALL>";
         this.aliases = bot.getConfig().getAliases(this.name);
         this.beListening = true;
         this.bePlaying = true;
@@ -52,13 +53,24 @@ public class RemoveCmd extends MusicCommand
         }
         if(event.getArgs().equalsIgnoreCase("all"))
         {
+            int playlists = handler.stopLazyPlaylists(event.getAuthor().getIdLong());
             int count = handler.getQueue().removeAll(event.getAuthor().getIdLong());
-            if(count==0)
+            if(count==0 && playlists>0)
+                event.replySuccess("Stopped adding your playlist to the queue.");
+            else if(count==0)
                 event.replyWarning("You don't have any songs in the queue!");
             else
                 event.replySuccess("Successfully removed your "+count+" entries.");
             return;
         }
+        String url = event.getArgs().startsWith("<") && event.getArgs().endsWith(">")
+                ? event.getArgs().substring(1,event.getArgs().length()-1)
+                : event.getArgs();
+        if(url.contains("://"))
+        {
+            removeUrl(event, handler, url);
+            return;
+        }
         int pos;
         try {
             pos = Integer.parseInt(event.getArgs());
@@ -70,15 +82,12 @@ public class RemoveCmd extends MusicCommand
             event.replyError("Position must be a valid integer between 1 and "+handler.getQueue().size()+"!");
             return;
         }
-        Settings settings = event.getClient().getSettingsFor(event.getGuild());
-        boolean isDJ = event.getMember().hasPermission(Permission.MANAGE_SERVER);
-        if(!isDJ)
-            isDJ = event.getMember().getRoles().contains(settings.getRole(event.getGuild()));
+        boolean isDJ = isDJ(event);
         QueuedTrack qt = handler.getQueue().get(pos-1);
         if(qt.getIdentifier()==event.getAuthor().getIdLong())
         {
             handler.getQueue().remove(pos-1);
-            event.replySuccess("Removed **"+qt.getTrack().getInfo().title+"** from the queue");
+            event.replySuccess("Removed **"+qt.getTitle()+"** from the queue");
         }
         else if(isDJ)
         {
@@ -89,12 +98,42 @@ public class RemoveCmd extends MusicCommand
             } catch(Exception e) {
                 u = null;
             }
-            event.replySuccess("Removed **"+qt.getTrack().getInfo().title
+            event.replySuccess("Removed **"+qt.getTitle()
                     +"** from the queue (requested by "+(u==null ? "someone" : "**"+u.getName()+"**")+")");
         }
         else
         {
-            event.replyError("You cannot remove **"+qt.getTrack().getInfo().title+"** because you didn't add it!");
+            event.replyError("You cannot remove **"+qt.getTitle()+"** because you didn't add it!");
         }
     }
+
+    // removes every entry of the track the link plays, however it is written,
+    // or only the user's own entries if they are not a DJ
+    private void removeUrl(CommandEvent event, AudioHandler handler, String url)
+    {
+        List<QueuedTrack> matches = handler.getQueue().find(QueuedTrack.keyOf(url));
+        if(matches.isEmpty())
+        {
+            event.replyError("There is no song with that URL in the queue!");
+            return;
+        }
+        boolean isDJ = isDJ(event);
+        int removed = 0;
+        for(QueuedTrack qt: matches)
+            if((isDJ || qt.getIdentifier()==event.getAuthor().getIdLong()) && handler.getQueue().remove(qt))
+                removed++;
+        String title = matches.get(0).getTitle();
+        if(removed==0)
+            event.replyError("You cannot remove **"+title+"** because you didn't add it!");
+        else
+            event.replySuccess("Removed **"+title+"** from the queue"+(removed>1 ? " ("+removed+" entries)" : ""));
+    }
+
+    private boolean isDJ(CommandEvent event)
+    {
+        if(event.getMember().hasPermission(Permission.MANAGE_SERVER))
+            return true;
+        Settings settings = event.getClient().getSettingsFor(event.getGuild());
+        return event.getMember().getRoles().contains(settings.getRole(event.getGuild()));
+    }
 }
@@ -22,11 +22,13 @@ import com.sedmelluq.discord.lavaplayer.tools.FriendlyException;
 import com.sedmelluq.discord.lavaplayer.tools.FriendlyException.Severity;
 import com.sedmelluq.discord.lavaplayer.track.AudioPlaylist;
 import com.sedmelluq.discord.lavaplayer.track.AudioTrack;
+import java.util.Collections;
 import java.util.concurrent.TimeUnit;
 import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jdautilities.menu.OrderedMenu;
 import com.jagrosh.jmusicbot.Bot;
 import com.jagrosh.jmusicbot.audio.AudioHandler;
+import com.jagrosh.jmusicbot.audio.QueueQuota;
 import com.jagrosh.jmusicbot.audio.QueuedTrack;
 import com.jagrosh.jmusicbot.commands.MusicCommand;
 import com.jagrosh.jmusicbot.utils.FormatUtil;
@@ -94,7 +96,14 @@ public class SearchCmd extends MusicCommand
                 return;
             }
             AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-            int pos = handler.addTrack(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)))+1;
+            QueueQuota.Result result = handler.addTracks(Collections.singletonList(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event))));
+            if(result.getAdded()==0)
+            {
+                m.editMessage(FormatUtil.filter(event.getClient().getWarning()+" **"+track.getInfo().title+"** was not added because "
+                        + (result.getDuplicates()>0 ? "it is already in the queue" : bot.getConfig().getQueueQuota().describe(result.getLimit())))).queue();
+                return;
+            }
+            int pos = result.getPosition()+1;
             m.editMessage(FormatUtil.filter(event.getClient().getSuccess()+" Added **"+track.getInfo().title
                     +"** (`"+ TimeUtil.formatTime(track.getDuration())+"`) "+(pos==0 ? "to begin playing"
                         : " to the queue at position "+pos))).queue();
@@ -116,7 +125,14 @@ public class SearchCmd extends MusicCommand
                             return;
                         }
                         AudioHandler handler = (AudioHandler)event.getGuild().getAudioManager().getSendingHandler();
-                        int pos = handler.addTrack(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event)))+1;
+                        QueueQuota.Result result = handler.addTracks(Collections.singletonList(new QueuedTrack(track, RequestMetadata.fromResultHandler(track, event))));
+                        if(result.getAdded()==0)
+                        {
+                            event.replyWarning("**"+FormatUtil.filter(track.getInfo().title)+"** was not added because "
+                                    + (result.getDuplicates()>0 ? "it is already in the queue" : bot.getConfig().getQueueQuota().describe(result.getLimit())));
+                            return;
+                        }
+                        int pos = result.getPosition()+1;
                         event.replySuccess("Added **" + FormatUtil.filter(track.getInfo().title)
                                 + "** (`" + TimeUtil.formatTime(track.getDuration()) + "`) " + (pos==0 ? "to begin playing" 
                                     : " to the queue at position "+pos));
@@ -18,6 +18,7 @@ package com.jagrosh.jmusicbot.commands.owner;
 import com.jagrosh.jdautilities.command.CommandEvent;
 import com.jagrosh.jdautilities.commons.JDAUtilitiesInfo;
 import com.jagrosh.jmusicbot.Bot;
+import com.jagrosh.jmusicbot.audio.AudioHandler;
 import com.jagrosh.jmusicbot.commands.OwnerCommand;
 import com.jagrosh.jmusicbot.utils.OtherUtil;
 import com.sedmelluq.discord.lavaplayer.tools.PlayerLibrary;
@@ -64,6 +65,8 @@ public class DebugCmd extends OwnerCommand
                 .append("\n  NPImages = ").append(bot.getConfig().useNPImages())
                 .append("\n  SongInStatus = ").append(bot.getConfig().getSongInStatus())
                 .append("\n  StayInChannel = ").append(bot.getConfig().getStay())
+                .append("\n  GaplessPreload = ").append(bot.getConfig().getGaplessPreload())
+                .append("\n  PlayerProfile = ").append(bot.getConfig().getEngineProfile())
                 .append("\n  UseEval = ").append(bot.getConfig().useEval())
                 .append("\n  UpdateAlerts = ").append(bot.getConfig().useUpdateAlerts());
         sb.append("\n\nDependency Information:")
@@ -74,7 +77,14 @@ public class DebugCmd extends OwnerCommand
         long used = total - (Runtime.getRuntime().freeMemory() / 1024 / 1024);
         sb.append("\n\nRuntime Information:")
                 .append("\n  Total Memory = ").append(total)
-                .append("\n  Used Memory = ").append(used);
+                .append("\n  Used Memory = ").append(used)
+                .append("\n  Audio Frames Sent = ").append(AudioHandler.getFramesSent())
+                .append("\n  Live Players = ").append(bot.getPlayerManager().getLivePlayerCount())
+                .append("\n  Pooled Players = ").append(bot.getPlayerManager().getPooledPlayerCount())
+                .append("\n  Track Switches = ").append(AudioHandler.getTrackSwitches())
+                .append("\n  Average Track Gap (ms) = ").append(AudioHandler.getTrackSwitches() == 0 ? 0 : AudioHandler.getTotalTrackGap() / AudioHandler.getTrackSwitches())
+                .append("\n  SponsorBlock Cache Size = ").append(bot.getPlayerManager().getSponsorBlockClient().getCacheSize())
+                .append("\n  Load Cache Size = ").append(bot.getPlayerManager().getLoadCache().size());
         sb.append("\n\nDiscord Information:")
                 .append("\n  ID = ").append(event.getJDA().getSelfUser().getId())
                 .append("\n  Guilds = ").append(event.getJDA().getGuildCache().size())
@@ -26,7 +26,9 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.IntConsumer;
 import java.util.stream.Collectors;
 
 /**
@@ -156,86 +158,106 @@ public class PlaylistLoader
         }
         
         public void loadTracks(AudioPlayerManager manager, Consumer<AudioTrack> consumer, Runnable callback)
+        {
+            loadTracks(manager, consumer, null, callback);
+        }
+        
+        /**
+         * Loads the items, up to the configured number at a time. The tracks
+         * reach the consumer in the order of the file, whichever item finishes
+         * loading first.
+         * 
+         * @param progress called with the number of items loaded so far as each one finishes, or null
+         * @param callback called once every item has finished, or null
+         */
+        public void loadTracks(AudioPlayerManager manager, Consumer<AudioTrack> consumer, IntConsumer progress, Runnable callback)
         {
             if(loaded)
                 return;
             loaded = true;
+            if(items.isEmpty())
+            {
+                if(callback != null)
+                    callback.run();
+                return;
+            }
+            // each lane loads its items one after the other, and the lanes run side by side;
+            // the keys are new objects so loads of the same playlist elsewhere do not wait on these
+            Object[] lanes = new Object[Math.max(1, Math.min(config.getPlaylistLoads(), items.size()))];
+            for(int i=0; i<lanes.length; i++)
+                lanes[i] = new Object();
+            Loading loading = new Loading(consumer, progress, callback);
             for(int i=0; i<items.size(); i++)
             {
-                boolean last = i+1 == items.size();
                 int index = i;
-                manager.loadItemOrdered(name, items.get(i), new AudioLoadResultHandler() 
+                loadItem(manager, lanes[i % lanes.length], i, (tracks, error) -> loading.complete(index, tracks, error));
+            }
+        }
+        
+        /**
+         * Loads a single item of the playlist. An item that is a playlist
+         * itself gives all of its tracks; tracks longer than the allowed
+         * maximum are left out.
+         * 
+         * @param orderingKey the key to order the load by
+         * @param loaded given the item's tracks, and the reason if it gave none
+         */
+        public void loadItem(AudioPlayerManager manager, Object orderingKey, int index, BiConsumer<List<AudioTrack>, PlaylistLoadError> loaded)
+        {
+            manager.loadItemOrdered(orderingKey, items.get(index), new AudioLoadResultHandler() 
+            {
+                @Override
+                public void trackLoaded(AudioTrack at) 
                 {
-                    private void done()
+                    if(config.isTooLong(at))
+                        loaded.accept(Collections.emptyList(), new PlaylistLoadError(index, items.get(index), "This track is longer than the allowed maximum"));
+                    else
                     {
-                        if(last)
-                        {
-                            if(shuffle)
-                                shuffleTracks();
-                            if(callback != null)
-                                callback.run();
-                        }
+                        at.setUserData(0L);
+                        loaded.accept(Collections.singletonList(at), null);
                     }
+                }
 
-                    @Override
-                    public void trackLoaded(AudioTrack at) 
+                @Override
+                public void playlistLoaded(AudioPlaylist ap) 
+                {
+                    if(ap.isSearchResult())
                     {
-                        if(config.isTooLong(at))
-                            errors.add(new PlaylistLoadError(index, items.get(index), "This track is longer than the allowed maximum"));
-                        else
-                        {
-                            at.setUserData(0L);
-                            tracks.add(at);
-                            consumer.accept(at);
-                        }
-                        done();
+                        trackLoaded(ap.getTracks().get(0));
                     }
-
-                    @Override
-                    public void playlistLoaded(AudioPlaylist ap) 
+                    else if(ap.getSelectedTrack()!=null)
                     {
-                        if(ap.isSearchResult())
-                        {
-                            trackLoaded(ap.getTracks().get(0));
-                        }
-                        else if(ap.getSelectedTrack()!=null)
-                        {
-                            trackLoaded(ap.getSelectedTrack());
-                        }
-                        else
-                        {
-                            List<AudioTrack> loaded = new ArrayList<>(ap.getTracks());
-                            if(shuffle)
-                                for(int first =0; first<loaded.size(); first++)
-                                {
-                                    int second = (int)(Math.random()*loaded.size());
-                                    AudioTrack tmp = loaded.get(first);
-                                    loaded.set(first, loaded.get(second));
-                                    loaded.set(second, tmp);
-                                }
-                            loaded.removeIf(track -> config.isTooLong(track));
-                            loaded.forEach(at -> at.setUserData(0L));
-                            tracks.addAll(loaded);
-                            loaded.forEach(at -> consumer.accept(at));
-                        }
-                        done();
+                        trackLoaded(ap.getSelectedTrack());
                     }
-
-                    @Override
-                    public void noMatches() 
+                    else
                     {
-                        errors.add(new PlaylistLoadError(index, items.get(index), "No matches found."));
-                        done();
+                        List<AudioTrack> tracks = new ArrayList<>(ap.getTracks());
+                        if(shuffle)
+                            for(int first =0; first<tracks.size(); first++)
+                            {
+                                int second = (int)(Math.random()*tracks.size());
+                                AudioTrack tmp = tracks.get(first);
+                                tracks.set(first, tracks.get(second));
+                                tracks.set(second, tmp);
+                            }
+                        tracks.removeIf(track -> config.isTooLong(track));
+                        tracks.forEach(at -> at.setUserData(0L));
+                        loaded.accept(tracks, null);
                     }
+                }
 
-                    @Override
-                    public void loadFailed(FriendlyException fe) 
-                    {
-                        errors.add(new PlaylistLoadError(index, items.get(index), "Failed to load track: "+fe.getLocalizedMessage()));
-                        done();
-                    }
-                });
-            }
+                @Override
+                public void noMatches() 
+                {
+                    loaded.accept(Collections.emptyList(), new PlaylistLoadError(index, items.get(index), "No matches found."));
+                }
+
+                @Override
+                public void loadFailed(FriendlyException fe) 
+                {
+                    loaded.accept(Collections.emptyList(), new PlaylistLoadError(index, items.get(index), "Failed to load track: "+fe.getLocalizedMessage()));
+                }
+            });
         }
         
         public void shuffleTracks()
@@ -262,6 +284,54 @@ public class PlaylistLoader
         {
             return errors;
         }
+        
+        /**
+         * Holds items that finished loading until every item before them has
+         * finished too, and then passes them on in order
+         */
+        private class Loading
+        {
+            private final Consumer<AudioTrack> consumer;
+            private final IntConsumer progress;
+            private final Runnable callback;
+            // the results of items that finished before an item ahead of them
+            private final List<List<AudioTrack>> results = new ArrayList<>(Collections.nCopies(items.size(), null));
+            private final PlaylistLoadError[] failures = new PlaylistLoadError[items.size()];
+            private int next = 0, finished = 0;
+            
+            private Loading(Consumer<AudioTrack> consumer, IntConsumer progress, Runnable callback)
+            {
+                this.consumer = consumer;
+                this.progress = progress;
+                this.callback = callback;
+            }
+            
+            private synchronized void complete(int index, List<AudioTrack> loaded, PlaylistLoadError error)
+            {
+                results.set(index, loaded);
+                failures[index] = error;
+                finished++;
+                while(next < results.size() && results.get(next) != null)
+                {
+                    if(failures[next] != null)
+                        errors.add(failures[next]);
+                    tracks.addAll(results.get(next));
+                    results.get(next).forEach(at -> consumer.accept(at));
+                    results.set(next, Collections.emptyList());
+                    failures[next] = null;
+                    next++;
+                }
+                if(progress != null)
+                    progress.accept(finished);
+                if(next == results.size())
+                {
+                    if(shuffle)
+                        shuffleTracks();
+                    if(callback != null)
+                        callback.run();
+                }
+            }
+        }
     }
     
     public class PlaylistLoadError
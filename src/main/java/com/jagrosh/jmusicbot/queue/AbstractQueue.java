@@ -16,10 +16,21 @@
 package com.jagrosh.jmusicbot.queue;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * Changes to the queue are serialized on the queue's monitor, so it can be
+ * changed from command, player and loader threads alike. {@link #getList()}
+ * and {@link #peek()} read without locking: the list is an immutable snapshot
+ * taken after the last change, and the head is published on every change.
  *
  * @author Wolfgang Schwendtbauer
  * @param <T>
@@ -28,90 +39,244 @@ public abstract class AbstractQueue<T extends Queueable>
 {
     protected AbstractQueue(AbstractQueue<T> queue)
     {
-        this.list = queue != null ? queue.getList() : new LinkedList<>();
+        this(queue, new ChunkedList<>());
     }
 
+    /**
+     * @param queue the queue whose entries to take over, or null
+     * @param store the empty list to keep the entries in
+     */
+    protected AbstractQueue(AbstractQueue<T> queue, List<T> store)
+    {
+        this.list = store;
+        if(queue != null)
+            for(T item: queue.getList())
+                insert(list.size(), item);
+        head = list.isEmpty() ? null : list.get(0);
+    }
+
+    // change through insert() and delete(), which keep the owner index in step
     protected final List<T> list;
+    // owner -> their entries in the list
+    private final Map<Long, Set<T>> owned = new HashMap<>();
+    // owner -> {entries, total duration} over the whole queue, kept by tally()
+    private final Map<Long, long[]> tallies = new HashMap<>();
+    // key -> the entries over the whole queue that play it, kept by tally()
+    private final Map<String, Set<T>> keyed = new HashMap<>();
+    private long totalDuration = 0;
+    private volatile List<T> snapshot = null;
+    private volatile T head;
 
     public abstract int add(T item);
 
-    public void addAt(int index, T item)
+    /**
+     * Adds a batch of entries under a single lock, placing each one as
+     * {@link #add} would
+     *
+     * @param items the entries, in order
+     * @return the position of the first entry, or -1 if there were none
+     */
+    public synchronized int addAll(Collection<? extends T> items)
     {
-        if(index >= list.size())
-            list.add(item);
-        else
-            list.add(index, item);
+        int first = -1;
+        for(T item: items)
+        {
+            int position = add(item);
+            if(first == -1)
+                first = position;
+        }
+        return first;
     }
 
-    public int size() {
+    public synchronized void addAt(int index, T item)
+    {
+        insert(Math.min(index, list.size()), item);
+        changed();
+    }
+
+    public synchronized int size() {
         return list.size();
     }
 
-    public T pull() {
-        return list.remove(0);
+    /**
+     * @return the first entry, or null if the queue is empty
+     */
+    public synchronized T pull() {
+        if(list.isEmpty())
+            return null;
+        T item = delete(0);
+        changed();
+        return item;
+    }
+
+    /**
+     * Reads the first entry without locking or removing it
+     *
+     * @return the first entry, or null if the queue is empty
+     */
+    public T peek()
+    {
+        return head;
     }
 
-    public boolean isEmpty()
+    public synchronized boolean isEmpty()
     {
         return list.isEmpty();
     }
 
+    /**
+     * Reads the whole queue without locking. The list is an unmodifiable
+     * snapshot, and later changes to the queue do not show up in it.
+     *
+     * @return the entries in play order
+     */
     public List<T> getList()
     {
-        return list;
+        List<T> current = snapshot;
+        if(current == null)
+        {
+            synchronized(this)
+            {
+                if(snapshot == null)
+                    snapshot = Collections.unmodifiableList(new ArrayList<>(entries(Integer.MAX_VALUE)));
+                current = snapshot;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Reads the first entries under the lock. Unlike {@link #getList()}, this
+     * does not take a snapshot of the whole queue when it has changed.
+     *
+     * @param count the most entries to read
+     * @return the entries in play order
+     */
+    public synchronized List<T> head(int count)
+    {
+        List<T> current = snapshot;
+        if(current != null)
+            return current.subList(0, Math.min(count, current.size()));
+        return new ArrayList<>(entries(count));
     }
 
-    public T get(int index) {
+    public synchronized T get(int index) {
         return list.get(index);
     }
 
-    public T remove(int index)
+    public synchronized T remove(int index)
     {
-        return list.remove(index);
+        T item = delete(index);
+        changed();
+        return item;
     }
 
-    public int removeAll(long identifier)
+    /**
+     * @param identifier the owner
+     * @return how many entries the owner has in the queue
+     */
+    public synchronized int count(long identifier)
     {
-        int count = 0;
-        for(int i=list.size()-1; i>=0; i--)
-        {
-            if(list.get(i).getIdentifier()==identifier)
-            {
-                list.remove(i);
-                count++;
-            }
-        }
-        return count;
+        long[] tally = tallies.get(identifier);
+        return tally == null ? 0 : (int) tally[0];
+    }
+
+    /**
+     * @param identifier the owner
+     * @return the total length of the owner's entries in milliseconds, not
+     *         counting streams and entries of unknown length
+     */
+    public synchronized long getDuration(long identifier)
+    {
+        long[] tally = tallies.get(identifier);
+        return tally == null ? 0 : tally[1];
+    }
+
+    /**
+     * @return the total length of the queue in milliseconds, not counting
+     *         streams and entries of unknown length
+     */
+    public synchronized long getTotalDuration()
+    {
+        return totalDuration;
     }
 
-    public void clear()
+    /**
+     * @param key what the entries play, see {@link Queueable#getKey()}
+     * @return true if any entry in the queue plays it
+     */
+    public synchronized boolean contains(String key)
+    {
+        return keyed.containsKey(key);
+    }
+
+    /**
+     * @param key what the entries play, see {@link Queueable#getKey()}
+     * @return the entries in the queue that play it, in no particular order
+     */
+    public synchronized List<T> find(String key)
+    {
+        Set<T> items = keyed.get(key);
+        return items == null ? Collections.emptyList() : new ArrayList<>(items);
+    }
+
+    /**
+     * Removes the given entry, wherever it is in the queue
+     *
+     * @return true if the entry was in the queue
+     */
+    public synchronized boolean remove(T item)
+    {
+        Set<T> items = owned.get(item.getIdentifier());
+        if(items == null || !items.contains(item))
+            return false;
+        remove(positionOf(item));
+        return true;
+    }
+
+    public synchronized int removeAll(long identifier)
+    {
+        int[] positions = positionsOf(identifier);
+        for(int i=positions.length-1; i>=0; i--)
+            delete(positions[i]);
+        if(positions.length > 0)
+            changed();
+        return positions.length;
+    }
+
+    public synchronized void clear()
     {
         list.clear();
+        owned.clear();
+        tallies.clear();
+        keyed.clear();
+        totalDuration = 0;
+        changed();
     }
 
-    public int shuffle(long identifier)
+    public synchronized int shuffle(long identifier)
     {
-        List<Integer> iset = new ArrayList<>();
-        for(int i=0; i<list.size(); i++)
+        int[] positions = positionsOf(identifier);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i=positions.length-1; i>0; i--)
         {
-            if(list.get(i).getIdentifier()==identifier)
-                iset.add(i);
+            int j = random.nextInt(i + 1);
+            T temp = list.get(positions[i]);
+            list.set(positions[i], list.get(positions[j]));
+            list.set(positions[j], temp);
         }
-        for(int j=0; j<iset.size(); j++)
-        {
-            int first = iset.get(j);
-            int second = iset.get((int)(Math.random()*iset.size()));
-            T temp = list.get(first);
-            list.set(first, list.get(second));
-            list.set(second, temp);
-        }
-        return iset.size();
+        changed();
+        return positions.length;
     }
 
-    public void skip(int number)
+    public synchronized void skip(int number)
     {
         if (number > 0) {
-            list.subList(0, number).clear();
+            List<T> skipped = list.subList(0, number);
+            for(T item: skipped)
+                unindex(item);
+            skipped.clear();
+            changed();
         }
     }
 
@@ -121,10 +286,134 @@ public abstract class AbstractQueue<T extends Queueable>
      * @param to The new position of the item
      * @return the moved item
      */
-    public T moveItem(int from, int to)
+    public synchronized T moveItem(int from, int to)
+    {
+        T item = delete(from);
+        insert(to, item);
+        changed();
+        return item;
+    }
+
+    protected void insert(int index, T item)
+    {
+        list.add(index, item);
+        owned.computeIfAbsent(item.getIdentifier(), k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(item);
+        tally(item, 1);
+    }
+
+    protected T delete(int index)
     {
-        T item = list.remove(from);
-        list.add(to, item);
+        T item = list.remove(index);
+        unindex(item);
         return item;
     }
+
+    /**
+     * Rebuilds the owner index after the owner's slots in the list were given
+     * other entries of theirs with {@code list.set}; the owner's counts stay
+     * as they are
+     *
+     * @param positions the owner's positions in the list
+     */
+    protected void reindex(long identifier, int[] positions)
+    {
+        Set<T> items = owned.get(identifier);
+        if(items == null)
+            return;
+        items.clear();
+        for(int position: positions)
+            items.add(list.get(position));
+    }
+
+    /**
+     * @param identifier the owner
+     * @return the positions of the owner's entries in the list, in order
+     */
+    protected int[] positionsOf(long identifier)
+    {
+        Set<T> items = owned.get(identifier);
+        if(items == null)
+            return new int[0];
+        int[] positions = new int[items.size()];
+        int i = 0;
+        for(T item: items)
+            positions[i++] = positionOf(item);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * @return the position of the entry in the list, or -1 if it is not there
+     */
+    protected int positionOf(T item)
+    {
+        return list instanceof ChunkedList ? ((ChunkedList<T>) list).indexOfInstance(item) : list.indexOf(item);
+    }
+
+    /**
+     * Counts an entry entering (+1) or leaving (-1) the queue, and indexes it
+     * by key. Entries kept outside {@link #list} must be counted by the
+     * subclass; {@link #clear()} resets every count.
+     */
+    protected void tally(T item, int sign)
+    {
+        long duration = item.getDuration();
+        if(duration <= 0 || duration == Long.MAX_VALUE)
+            duration = 0;
+        long[] tally = tallies.computeIfAbsent(item.getIdentifier(), k -> new long[2]);
+        tally[0] += sign;
+        tally[1] += sign * duration;
+        if(tally[0] <= 0)
+            tallies.remove(item.getIdentifier());
+        totalDuration += sign * duration;
+        String key = item.getKey();
+        if(key == null)
+            return;
+        if(sign > 0)
+            keyed.computeIfAbsent(key, k -> Collections.newSetFromMap(new IdentityHashMap<>())).add(item);
+        else
+        {
+            Set<T> items = keyed.get(key);
+            if(items != null && items.remove(item) && items.isEmpty())
+                keyed.remove(key);
+        }
+    }
+
+    private void unindex(T item)
+    {
+        Set<T> items = owned.get(item.getIdentifier());
+        if(items != null)
+        {
+            items.remove(item);
+            if(items.isEmpty())
+                owned.remove(item.getIdentifier());
+        }
+        tally(item, -1);
+    }
+
+    /**
+     * @param limit the most entries to return
+     * @return the first entries in play order; called while holding the lock
+     */
+    protected List<T> entries(int limit)
+    {
+        return limit >= list.size() ? list : list.subList(0, limit);
+    }
+
+    /**
+     * Must be called, while holding the lock, after every change to the queue
+     */
+    protected void changed()
+    {
+        snapshot = null;
+        head = first();
+    }
+
+    /**
+     * @return the entry that plays next, or null; called while holding the lock
+     */
+    protected T first()
+    {
+        return list.isEmpty() ? null : list.get(0);
+    }
 }
@@ -0,0 +1,304 @@
+package com.jagrosh.jmusicbot.queue;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+/**
+ * A list stored as a sequence of small array chunks, with a Fenwick tree over
+ * the chunk sizes to find the chunk holding a position. Positional get and set
+ * take O(log n). Insert and remove take O(log n) to find the chunk, plus a
+ * copy bounded by the chunk size, and update the tree in place.
+ *
+ * A chunk is split when it grows past {@link #CHUNK_SIZE} and merged with a
+ * neighbour when it shrinks below a quarter of that, so every chunk but the
+ * last stays at least a quarter full. Splits and merges renumber the chunks
+ * and rebuild the tree, in O(n / CHUNK_SIZE); they happen at most once every
+ * few dozen changes to a chunk, which keeps that cost small but not O(log n).
+ *
+ * The list also remembers which chunk every element is in, so
+ * {@link #indexOfInstance} finds an element in O(log n) as well.
+ *
+ * @param <T>
+ */
+public class ChunkedList<T> extends AbstractList<T> implements RandomAccess
+{
+    static final int CHUNK_SIZE = 64;
+
+    private final List<Chunk<T>> chunks = new ArrayList<>();
+    private final Map<Object, Chunk<T>> homes = new IdentityHashMap<>();
+    // elements stored more than once, with their number of extra copies
+    private final Map<Object, Integer> copies = new IdentityHashMap<>();
+    private int[] tree = new int[1];
+    private int size = 0;
+
+    // set by locate()
+    private int chunk, offset;
+
+    @Override
+    public T get(int index)
+    {
+        checkIndex(index, size);
+        locate(index);
+        return chunks.get(chunk).items.get(offset);
+    }
+
+    @Override
+    public T set(int index, T element)
+    {
+        checkIndex(index, size);
+        locate(index);
+        Chunk<T> target = chunks.get(chunk);
+        T previous = target.items.set(offset, element);
+        unlink(previous);
+        link(element, target);
+        return previous;
+    }
+
+    @Override
+    public int size()
+    {
+        return size;
+    }
+
+    @Override
+    public void add(int index, T element)
+    {
+        checkIndex(index, size + 1);
+        modCount++;
+        if(index == size)
+        {
+            // appending only touches the last chunk
+            Chunk<T> last = chunks.isEmpty() ? null : chunks.get(chunks.size() - 1);
+            if(last == null || last.items.size() >= CHUNK_SIZE)
+            {
+                last = new Chunk<>();
+                last.items.add(element);
+                chunks.add(last);
+                size++;
+                rebuild();
+            }
+            else
+            {
+                last.items.add(element);
+                size++;
+                update(last.index, 1);
+            }
+            link(element, last);
+            return;
+        }
+        locate(index);
+        Chunk<T> target = chunks.get(chunk);
+        target.items.add(offset, element);
+        link(element, target);
+        size++;
+        if(target.items.size() > CHUNK_SIZE)
+        {
+            List<T> upper = target.items.subList(CHUNK_SIZE / 2, target.items.size());
+            Chunk<T> split = new Chunk<>();
+            split.items.addAll(upper);
+            upper.clear();
+            for(T item: split.items)
+                homes.put(item, split);
+            chunks.add(chunk + 1, split);
+            rebuild();
+        }
+        else
+            update(chunk, 1);
+    }
+
+    @Override
+    public T remove(int index)
+    {
+        checkIndex(index, size);
+        modCount++;
+        locate(index);
+        Chunk<T> target = chunks.get(chunk);
+        T item = target.items.remove(offset);
+        unlink(item);
+        size--;
+        if(target.items.isEmpty() && chunks.size() == 1)
+        {
+            chunks.clear();
+            rebuild();
+        }
+        else if(target.items.size() < CHUNK_SIZE / 4 && chunks.size() > 1)
+            merge(chunk);
+        else
+            update(chunk, -1);
+        return item;
+    }
+
+    @Override
+    public void clear()
+    {
+        modCount++;
+        chunks.clear();
+        homes.clear();
+        copies.clear();
+        size = 0;
+        rebuild();
+    }
+
+    /**
+     * Finds an element by identity rather than by equals
+     *
+     * @param item the element
+     * @return the position of the first occurrence of the element, or -1
+     */
+    public int indexOfInstance(Object item)
+    {
+        Chunk<T> home = homes.get(item);
+        if(home == null)
+            return -1;
+        if(!copies.containsKey(item))
+        {
+            int index = 0;
+            for(int i = home.index; i > 0; i -= i & -i)
+                index += tree[i];
+            for(int i=0; i<home.items.size(); i++)
+                if(home.items.get(i) == item)
+                    return index + i;
+        }
+        // stored more than once, or the recorded chunk belonged to a removed copy
+        for(int i=0; i<size; i++)
+            if(get(i) == item)
+                return i;
+        return -1;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex)
+    {
+        if(fromIndex == 0)
+        {
+            // drop whole chunks from the head, then trim the rest
+            modCount++;
+            int remaining = toIndex;
+            int dropped = 0;
+            while(dropped < chunks.size() && chunks.get(dropped).items.size() <= remaining)
+            {
+                for(T item: chunks.get(dropped).items)
+                    unlink(item);
+                remaining -= chunks.get(dropped++).items.size();
+            }
+            chunks.subList(0, dropped).clear();
+            if(remaining > 0)
+            {
+                List<T> head = chunks.get(0).items.subList(0, remaining);
+                for(T item: head)
+                    unlink(item);
+                head.clear();
+            }
+            size -= toIndex;
+            if(chunks.size() > 1 && chunks.get(0).items.size() < CHUNK_SIZE / 4)
+                merge(0);
+            else
+                rebuild();
+        }
+        else
+        {
+            for(int i=fromIndex; i<toIndex; i++)
+                remove(fromIndex);
+        }
+    }
+
+    // merges a chunk that has become small into its smaller neighbour, and
+    // splits the two evenly again if together they are too big for one chunk
+    private void merge(int index)
+    {
+        int left = index > 0 ? chunks.get(index - 1).items.size() : Integer.MAX_VALUE;
+        int right = index + 1 < chunks.size() ? chunks.get(index + 1).items.size() : Integer.MAX_VALUE;
+        int first = left <= right ? index - 1 : index;
+        Chunk<T> lower = chunks.get(first);
+        Chunk<T> upper = chunks.get(first + 1);
+        lower.items.addAll(upper.items);
+        upper.items.clear();
+        if(lower.items.size() > CHUNK_SIZE)
+        {
+            List<T> half = lower.items.subList(lower.items.size() / 2, lower.items.size());
+            upper.items.addAll(half);
+            half.clear();
+        }
+        else
+            chunks.remove(first + 1);
+        for(T item: lower.items)
+            homes.put(item, lower);
+        for(T item: upper.items)
+            homes.put(item, upper);
+        rebuild();
+    }
+
+    private void link(T item, Chunk<T> home)
+    {
+        Chunk<T> previous = homes.put(item, home);
+        if(previous != null)
+            copies.merge(item, 1, Integer::sum);
+    }
+
+    private void unlink(T item)
+    {
+        Integer extra = copies.get(item);
+        if(extra == null)
+            homes.remove(item);
+        else if(extra == 1)
+            copies.remove(item);
+        else
+            copies.put(item, extra - 1);
+    }
+
+    // finds the chunk and offset of a position by descending the tree
+    private void locate(int index)
+    {
+        int pos = 0;
+        int remaining = index;
+        for(int step = Integer.highestOneBit(chunks.size()); step > 0; step >>= 1)
+        {
+            if(pos + step <= chunks.size() && tree[pos + step] <= remaining)
+            {
+                pos += step;
+                remaining -= tree[pos];
+            }
+        }
+        chunk = pos;
+        offset = remaining;
+    }
+
+    private void update(int chunkIndex, int delta)
+    {
+        for(int i = chunkIndex + 1; i <= chunks.size(); i += i & -i)
+            tree[i] += delta;
+    }
+
+    private void rebuild()
+    {
+        if(tree.length < chunks.size() + 1 || tree.length > 4 * (chunks.size() + 1))
+            tree = new int[chunks.size() * 2 + 1];
+        else
+            Arrays.fill(tree, 0);
+        for(int i=1; i<=chunks.size(); i++)
+        {
+            chunks.get(i - 1).index = i - 1;
+            tree[i] += chunks.get(i - 1).items.size();
+            int parent = i + (i & -i);
+            if(parent <= chunks.size())
+                tree[parent] += tree[i];
+        }
+    }
+
+    private void checkIndex(int index, int bound)
+    {
+        if(index < 0 || index >= bound)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+    }
+
+    private static class Chunk<T>
+    {
+        private final ArrayList<T> items = new ArrayList<>(CHUNK_SIZE);
+        private int index;
+    }
+}
@@ -15,10 +15,25 @@
  */
 package com.jagrosh.jmusicbot.queue;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
 
 /**
+ * A queue that plays one entry per owner in turn. Each owner has their own
+ * sub-queue, and the owners take turns in rotation order: the owner at the
+ * front plays an entry and then goes to the back of the rotation.
+ *
+ * Entries whose position was set explicitly ({@link #addAt} and
+ * {@link #moveItem}) are kept in {@link #list}, ahead of the rotation. New
+ * entries always go into the rotation, after that fixed prefix; they are not
+ * interleaved with the prefix, even where an owner's turn would come up in it.
  *
  * @author John Grosh (jagrosh)
  * @param <T>
@@ -28,27 +43,288 @@ public class FairQueue<T extends Queueable> extends AbstractQueue<T>
     public FairQueue(AbstractQueue<T> queue)
     {
         super(queue);
+        // keep the previous order exactly; whatever part of it is not
+        // already round-robin stays in the fixed prefix
+        List<T> previous = new ArrayList<>(list);
+        super.clear();
+        int fixed = 0;
+        for(int i=0; i<previous.size(); i++)
+        {
+            T item = previous.get(i);
+            if(rotationIndex(item.getIdentifier()) == rotated)
+                append(item);
+            else
+            {
+                // the rotation so far goes into the prefix, and is counted again there
+                fixed = i + 1;
+                for(ArrayDeque<T> own: owners.values())
+                    for(T dropped: own)
+                        tally(dropped, -1);
+                owners.clear();
+                rotated = 0;
+            }
+        }
+        for(T item: previous.subList(0, fixed))
+            insert(list.size(), item);
+        changed();
+    }
+
+    // sub-queues in rotation order
+    private final Map<Long, ArrayDeque<T>> owners = new LinkedHashMap<>();
+    private int rotated = 0;
+
+    @Override
+    public synchronized int add(T item)
+    {
+        int index = list.size() + rotationIndex(item.getIdentifier());
+        append(item);
+        changed();
+        return index;
+    }
+
+    /**
+     * Adds a batch of entries, each to the end of its owner's sub-queue;
+     * only the position of the first one is worked out
+     */
+    @Override
+    public synchronized int addAll(Collection<? extends T> items)
+    {
+        if(items.isEmpty())
+            return -1;
+        int first = list.size() + rotationIndex(items.iterator().next().getIdentifier());
+        for(T item: items)
+            append(item);
+        changed();
+        return first;
     }
 
-    protected final Set<Long> set = new HashSet<>();
+    @Override
+    public synchronized void addAt(int index, T item)
+    {
+        fix(index - list.size());
+        super.addAt(index, item);
+    }
 
     @Override
-    public int add(T item)
+    public synchronized int size()
     {
-        int lastIndex;
-        for(lastIndex=list.size()-1; lastIndex>-1; lastIndex--)
-            if(list.get(lastIndex).getIdentifier() == item.getIdentifier())
-                break;
-        lastIndex++;
-        set.clear();
-        for(; lastIndex<list.size(); lastIndex++)
+        return list.size() + rotated;
+    }
+
+    @Override
+    public synchronized T pull()
+    {
+        if(!list.isEmpty())
+            return super.pull();
+        if(rotated == 0)
+            return null;
+        T item = pullRotation();
+        changed();
+        return item;
+    }
+
+    @Override
+    public synchronized boolean isEmpty()
+    {
+        return list.isEmpty() && rotated == 0;
+    }
+
+    @Override
+    public synchronized T get(int index)
+    {
+        if(index >= list.size() && index < list.size() + owners.size())
         {
-            if(set.contains(list.get(lastIndex).getIdentifier()))
-                break;
-            set.add(list.get(lastIndex).getIdentifier());
+            // the first round is just the head of every sub-queue
+            Iterator<ArrayDeque<T>> it = owners.values().iterator();
+            for(int i=list.size(); i<index; i++)
+                it.next();
+            return it.next().peek();
         }
-        list.add(lastIndex, item);
-        return lastIndex;
+        return getList().get(index);
     }
 
+    @Override
+    public synchronized T remove(int index)
+    {
+        if(index < list.size())
+            return super.remove(index);
+        T item = getList().get(index);
+        removeRotation(item);
+        changed();
+        return item;
+    }
+
+    @Override
+    public synchronized boolean remove(T item)
+    {
+        if(super.remove(item))
+            return true;
+        if(!removeRotation(item))
+            return false;
+        changed();
+        return true;
+    }
+
+    @Override
+    public synchronized int removeAll(long identifier)
+    {
+        int count = super.removeAll(identifier);
+        ArrayDeque<T> queue = owners.remove(identifier);
+        if(queue != null)
+        {
+            count += queue.size();
+            rotated -= queue.size();
+            for(T item: queue)
+                tally(item, -1);
+            changed();
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        owners.clear();
+        rotated = 0;
+        super.clear();
+    }
+
+    @Override
+    public synchronized int shuffle(long identifier)
+    {
+        // the owner's slots in the fixed prefix come first, then their sub-queue
+        int[] fixed = positionsOf(identifier);
+        List<T> items = new ArrayList<>(count(identifier));
+        for(int position: fixed)
+            items.add(list.get(position));
+        ArrayDeque<T> queue = owners.get(identifier);
+        if(queue != null)
+            items.addAll(queue);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for(int i=items.size()-1; i>0; i--)
+            Collections.swap(items, i, random.nextInt(i + 1));
+        for(int i=0; i<fixed.length; i++)
+            list.set(fixed[i], items.get(i));
+        reindex(identifier, fixed);
+        if(queue != null)
+        {
+            queue.clear();
+            queue.addAll(items.subList(fixed.length, items.size()));
+        }
+        changed();
+        return items.size();
+    }
+
+    @Override
+    public synchronized void skip(int number)
+    {
+        for(int i=0; i<number; i++)
+            pull();
+    }
+
+    @Override
+    public synchronized T moveItem(int from, int to)
+    {
+        T item = remove(from);
+        addAt(to, item);
+        return item;
+    }
+
+    /**
+     * Where a new entry for the given owner lands in the rotation: after the
+     * owner's last entry, at the end of that round
+     */
+    private int rotationIndex(long identifier)
+    {
+        ArrayDeque<T> own = owners.get(identifier);
+        int round = own == null ? 0 : own.size();
+        int index = 0;
+        boolean before = true;
+        for(Map.Entry<Long, ArrayDeque<T>> entry: owners.entrySet())
+        {
+            int size = entry.getValue().size();
+            if(entry.getKey() == identifier)
+            {
+                before = false;
+                index += round;
+            }
+            else
+                index += Math.min(size, round) + (before && size > round ? 1 : 0);
+        }
+        return index;
+    }
+
+    private void append(T item)
+    {
+        owners.computeIfAbsent(item.getIdentifier(), k -> new ArrayDeque<>()).add(item);
+        rotated++;
+        tally(item, 1);
+    }
+
+    private boolean removeRotation(T item)
+    {
+        ArrayDeque<T> queue = owners.get(item.getIdentifier());
+        if(queue == null || !queue.removeFirstOccurrence(item))
+            return false;
+        if(queue.isEmpty())
+            owners.remove(item.getIdentifier());
+        rotated--;
+        tally(item, -1);
+        return true;
+    }
+
+    private T pullRotation()
+    {
+        Iterator<Map.Entry<Long, ArrayDeque<T>>> it = owners.entrySet().iterator();
+        Map.Entry<Long, ArrayDeque<T>> first = it.next();
+        it.remove();
+        T item = first.getValue().poll();
+        if(!first.getValue().isEmpty())
+            owners.put(first.getKey(), first.getValue());
+        rotated--;
+        tally(item, -1);
+        return item;
+    }
+
+    // moves the first entries of the rotation into the fixed prefix, which
+    // leaves the order of the whole queue unchanged
+    private void fix(int count)
+    {
+        for(int i=0; i<count && rotated > 0; i++)
+            insert(list.size(), pullRotation());
+    }
+
+    @Override
+    protected List<T> entries(int limit)
+    {
+        if(limit <= list.size())
+            return list.subList(0, limit);
+        List<T> all = new ArrayList<>(Math.min(limit, size()));
+        all.addAll(list);
+        List<Iterator<T>> round = new ArrayList<>(owners.size());
+        for(ArrayDeque<T> queue: owners.values())
+            round.add(queue.iterator());
+        while(!round.isEmpty())
+        {
+            List<Iterator<T>> next = new ArrayList<>(round.size());
+            for(Iterator<T> it: round)
+            {
+                if(all.size() >= limit)
+                    return all;
+                all.add(it.next());
+                if(it.hasNext())
+                    next.add(it);
+            }
+            round = next;
+        }
+        return all;
+    }
+
+    @Override
+    protected T first()
+    {
+        if(!list.isEmpty())
+            return list.get(0);
+        return owners.isEmpty() ? null : owners.values().iterator().next().peek();
+    }
 }
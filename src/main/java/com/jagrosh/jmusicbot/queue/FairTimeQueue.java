@@ -0,0 +1,198 @@
+package com.jagrosh.jmusicbot.queue;
+
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A queue that shares play time, rather than entries, between owners. Every
+ * entry is tagged with the virtual time it would start at if each owner's
+ * entries played back to back from where that owner last left off, and the
+ * queue plays in tag order. An owner queueing long entries therefore gets
+ * fewer of them in before the next owner's turn.
+ *
+ * The list is kept sorted by tag, so an entry is placed with a binary search.
+ *
+ * @param <T>
+ */
+public class FairTimeQueue<T extends Queueable> extends AbstractQueue<T>
+{
+    // weight of streams and entries of unknown length
+    private static final long STREAM_WEIGHT = TimeUnit.HOURS.toMillis(1);
+
+    private final Map<T, Long> tags = new IdentityHashMap<>();
+    // owner -> virtual time at which their queued entries end
+    private final Map<Long, Long> finish = new HashMap<>();
+    // owner -> virtual time at which their last played entry ended
+    private final Map<Long, Long> played = new HashMap<>();
+    // tag of the last entry pulled
+    private long now = 0;
+
+    public FairTimeQueue(AbstractQueue<T> queue)
+    {
+        super(queue);
+        // keep the previous order, tagging each entry no earlier than the one before
+        long last = 0;
+        for(T item: list)
+        {
+            last = Math.max(last, finish.getOrDefault(item.getIdentifier(), 0L));
+            tags.put(item, last);
+            finish.put(item.getIdentifier(), last + weight(item));
+        }
+    }
+
+    @Override
+    public synchronized int add(T item)
+    {
+        long tag = Math.max(now, finish.getOrDefault(item.getIdentifier(), 0L));
+        finish.put(item.getIdentifier(), tag + weight(item));
+        int lo = 0, hi = list.size();
+        while(lo < hi)
+        {
+            int mid = (lo + hi) >>> 1;
+            if(tags.get(list.get(mid)) <= tag)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        insert(lo, item);
+        tags.put(item, tag);
+        changed();
+        return lo;
+    }
+
+    /**
+     * Adds a batch of entries by tagging them all, appending them and sorting
+     * the list once. The list is two sorted runs by then, so the stable sort
+     * is a single merge, and it leaves each new entry after the entries with
+     * the same tag, as {@link #add} does.
+     */
+    @Override
+    public synchronized int addAll(Collection<? extends T> items)
+    {
+        if(items.isEmpty())
+            return -1;
+        for(T item: items)
+        {
+            long tag = Math.max(now, finish.getOrDefault(item.getIdentifier(), 0L));
+            finish.put(item.getIdentifier(), tag + weight(item));
+            insert(list.size(), item);
+            tags.put(item, tag);
+        }
+        list.sort(Comparator.comparingLong(tags::get));
+        changed();
+        return positionOf(items.iterator().next());
+    }
+
+    @Override
+    public synchronized void addAt(int index, T item)
+    {
+        index = Math.min(index, list.size());
+        super.addAt(index, item);
+        tags.put(item, tagAt(index));
+    }
+
+    @Override
+    public synchronized T pull()
+    {
+        if(list.isEmpty())
+            return null;
+        long tag = tags.get(list.get(0));
+        T item = super.pull();
+        now = Math.max(now, tag);
+        played.put(item.getIdentifier(), tag + weight(item));
+        return item;
+    }
+
+    @Override
+    public synchronized T remove(int index)
+    {
+        T item = super.remove(index);
+        refresh(item.getIdentifier());
+        return item;
+    }
+
+    @Override
+    public synchronized int removeAll(long identifier)
+    {
+        int count = super.removeAll(identifier);
+        refresh(identifier);
+        return count;
+    }
+
+    @Override
+    public synchronized void clear()
+    {
+        tags.clear();
+        finish.clear();
+        played.clear();
+        super.clear();
+    }
+
+    @Override
+    public synchronized int shuffle(long identifier)
+    {
+        // the tags belong to the positions, not to the entries
+        int[] positions = positionsOf(identifier);
+        long[] positionTags = new long[positions.length];
+        for(int i=0; i<positions.length; i++)
+            positionTags[i] = tags.get(list.get(positions[i]));
+        int count = super.shuffle(identifier);
+        for(int i=0; i<positions.length; i++)
+            tags.put(list.get(positions[i]), positionTags[i]);
+        return count;
+    }
+
+    @Override
+    public synchronized void skip(int number)
+    {
+        for(int i=0; i<number; i++)
+            pull();
+    }
+
+    @Override
+    public synchronized T moveItem(int from, int to)
+    {
+        T item = delete(from);
+        insert(to, item);
+        tags.put(item, tagAt(to));
+        changed();
+        return item;
+    }
+
+    @Override
+    protected T delete(int index)
+    {
+        T item = super.delete(index);
+        tags.remove(item);
+        return item;
+    }
+
+    // a tag for an entry placed at the given position that keeps the list sorted
+    private long tagAt(int index)
+    {
+        if(index > 0)
+            return tags.get(list.get(index - 1));
+        return list.size() > 1 ? Math.min(now, tags.get(list.get(1))) : now;
+    }
+
+    private void refresh(long identifier)
+    {
+        long end = played.getOrDefault(identifier, 0L);
+        for(int position: positionsOf(identifier))
+        {
+            T item = list.get(position);
+            end = Math.max(end, tags.get(item) + weight(item));
+        }
+        finish.put(identifier, end);
+    }
+
+    private static long weight(Queueable item)
+    {
+        long duration = item.getDuration();
+        return duration <= 0 || duration == Long.MAX_VALUE ? STREAM_WEIGHT : duration;
+    }
+}
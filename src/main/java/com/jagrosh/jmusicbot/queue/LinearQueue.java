@@ -28,9 +28,10 @@ public class LinearQueue<T extends Queueable> extends AbstractQueue<T>
     }
 
     @Override
-    public int add(T item)
+    public synchronized int add(T item)
     {
-        list.add(item);
+        insert(list.size(), item);
+        changed();
         return list.size() - 1;
     }
 
@@ -22,4 +22,21 @@ package com.jagrosh.jmusicbot.queue;
 public interface Queueable {
     
     public long getIdentifier();
+
+    /**
+     * @return how long the entry plays for in milliseconds, or 0 if unknown
+     */
+    public default long getDuration()
+    {
+        return 0L;
+    }
+
+    /**
+     * @return what the entry plays, such as a track URI, so that entries
+     *         playing the same thing can be found; or null if unknown
+     */
+    public default String getKey()
+    {
+        return null;
+    }
 }
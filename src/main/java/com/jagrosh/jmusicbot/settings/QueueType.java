@@ -17,6 +17,7 @@ package com.jagrosh.jmusicbot.settings;
 
 import com.jagrosh.jmusicbot.queue.AbstractQueue;
 import com.jagrosh.jmusicbot.queue.FairQueue;
+import com.jagrosh.jmusicbot.queue.FairTimeQueue;
 import com.jagrosh.jmusicbot.queue.LinearQueue;
 import com.jagrosh.jmusicbot.queue.Queueable;
 import com.jagrosh.jmusicbot.queue.QueueSupplier;
@@ -32,7 +33,8 @@ import java.util.stream.Collectors;
 public enum QueueType
 {
     LINEAR("\u23E9", "Linear", LinearQueue::new),     // ⏩
-    FAIR("\uD83D\uDD22", "Fair", FairQueue::new);     // 🔢
+    FAIR("\uD83D\uDD22", "Fair", FairQueue::new),     // 🔢
+    FAIR_TIME("\u23F1", "Fair (by play time)", FairTimeQueue::new);     // ⏱
 
     private final String userFriendlyName;
     private final String emoji;
@@ -39,8 +39,9 @@ public class Settings implements GuildSettingsProvider
     private QueueType queueType;
     private String prefix;
     private double skipRatio;
+    private boolean rejectDuplicates;
 
-    public Settings(SettingsManager manager, String textId, String voiceId, String roleId, int volume, String defaultPlaylist, RepeatMode repeatMode, String prefix, double skipRatio, QueueType queueType)
+    public Settings(SettingsManager manager, String textId, String voiceId, String roleId, int volume, String defaultPlaylist, RepeatMode repeatMode, String prefix, double skipRatio, QueueType queueType, boolean rejectDuplicates)
     {
         this.manager = manager;
         try
@@ -73,9 +74,10 @@ public class Settings implements GuildSettingsProvider
         this.prefix = prefix;
         this.skipRatio = skipRatio;
         this.queueType = queueType;
+        this.rejectDuplicates = rejectDuplicates;
     }
 
-    public Settings(SettingsManager manager, long textId, long voiceId, long roleId, int volume, String defaultPlaylist, RepeatMode repeatMode, String prefix, double skipRatio, QueueType queueType)
+    public Settings(SettingsManager manager, long textId, long voiceId, long roleId, int volume, String defaultPlaylist, RepeatMode repeatMode, String prefix, double skipRatio, QueueType queueType, boolean rejectDuplicates)
     {
         this.manager = manager;
         this.textId = textId;
@@ -87,6 +89,7 @@ public class Settings implements GuildSettingsProvider
         this.prefix = prefix;
         this.skipRatio = skipRatio;
         this.queueType = queueType;
+        this.rejectDuplicates = rejectDuplicates;
     }
 
     // Getters
@@ -135,6 +138,11 @@ public class Settings implements GuildSettingsProvider
         return queueType;
     }
 
+    public boolean getRejectDuplicates()
+    {
+        return rejectDuplicates;
+    }
+
     @Override
     public Collection<String> getPrefixes()
     {
@@ -195,4 +203,10 @@ public class Settings implements GuildSettingsProvider
         this.queueType = queueType;
         this.manager.writeSettings();
     }
+
+    public void setRejectDuplicates(boolean rejectDuplicates)
+    {
+        this.rejectDuplicates = rejectDuplicates;
+        this.manager.writeSettings();
+    }
 }
@@ -0,0 +1,82 @@
+package com.jagrosh.jmusicbot;
+
+import com.jagrosh.jmusicbot.queue.ChunkedList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the chunked list behind large queues, checked against an ArrayList.
+ */
+public class ChunkedListTest
+{
+    @Test
+    public void matchesArrayList()
+    {
+        ChunkedList<Integer> list = new ChunkedList<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(0);
+        for(int i=0; i<5000; i++)
+        {
+            int op = random.nextInt(4);
+            if(op < 2 || expected.isEmpty())
+            {
+                int index = random.nextInt(expected.size() + 1);
+                list.add(index, i);
+                expected.add(index, i);
+            }
+            else if(op == 2)
+            {
+                int index = random.nextInt(expected.size());
+                assertEquals(expected.remove(index), list.remove(index));
+            }
+            else
+                assertEquals(expected.remove(0), list.remove(0));
+        }
+        assertEquals(expected, list);
+    }
+    
+    @Test
+    public void shrinkKeepsPositions()
+    {
+        ChunkedList<Integer> list = new ChunkedList<>();
+        List<Integer> expected = new ArrayList<>();
+        Random random = new Random(1);
+        for(int i=0; i<3000; i++)
+        {
+            // one instance in both lists, since indexOfInstance compares identity
+            Integer item = i;
+            int index = random.nextInt(expected.size() + 1);
+            list.add(index, item);
+            expected.add(index, item);
+        }
+        // removing most entries merges the chunks they leave nearly empty
+        while(expected.size() > 50)
+        {
+            int index = random.nextInt(expected.size());
+            assertEquals(expected.remove(index), list.remove(index));
+            if(expected.size() % 500 == 0)
+                for(int i=0; i<expected.size(); i++)
+                    assertEquals(i, list.indexOfInstance(expected.get(i)));
+        }
+        list.subList(0, 40).clear();
+        expected.subList(0, 40).clear();
+        assertEquals(expected, list);
+        for(int i=0; i<expected.size(); i++)
+            assertEquals(i, list.indexOfInstance(expected.get(i)));
+    }
+    
+    @Test
+    public void skipFromHead()
+    {
+        ChunkedList<Integer> list = new ChunkedList<>();
+        for(int i=0; i<1000; i++)
+            list.add(i);
+        list.subList(0, 300).clear();
+        assertEquals(700, list.size());
+        assertEquals(300, (int) list.get(0));
+        assertEquals(999, (int) list.get(699));
+    }
+}
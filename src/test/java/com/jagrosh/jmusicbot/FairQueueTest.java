@@ -16,7 +16,10 @@
 package com.jagrosh.jmusicbot;
 
 import com.jagrosh.jmusicbot.queue.FairQueue;
+import com.jagrosh.jmusicbot.queue.LinearQueue;
 import com.jagrosh.jmusicbot.queue.Queueable;
+import java.util.ArrayList;
+import java.util.List;
 import org.junit.Test;
 import static org.junit.Assert.*;
 
@@ -46,13 +49,216 @@ public class FairQueueTest
         assertEquals(queue.size(), size);
     }
     
+    @Test
+    public void roundRobinOrder()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        assertEquals(0, queue.add(new Q(1)));
+        assertEquals(1, queue.add(new Q(1)));
+        assertEquals(2, queue.add(new Q(1)));
+        assertEquals(1, queue.add(new Q(2)));
+        assertEquals(3, queue.add(new Q(2)));
+        assertEquals(2, queue.add(new Q(3)));
+        assertEquals(5, queue.add(new Q(3)));
+        long[] expected = {1, 2, 3, 1, 2, 3, 1};
+        for(int i=0; i<expected.length; i++)
+            assertEquals(expected[i], queue.get(i).getIdentifier());
+    }
+    
+    @Test
+    public void pullRotatesOwner()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        queue.add(new Q(1));
+        queue.add(new Q(1));
+        queue.add(new Q(2));
+        queue.add(new Q(2));
+        assertEquals(1, queue.pull().getIdentifier());
+        // owner 1 has had their turn, and a new owner joins at the end of the round
+        assertEquals(2, queue.add(new Q(3)));
+        assertEquals(2, queue.pull().getIdentifier());
+        assertEquals(1, queue.pull().getIdentifier());
+        assertEquals(3, queue.pull().getIdentifier());
+        assertEquals(2, queue.pull().getIdentifier());
+        assertTrue(queue.isEmpty());
+    }
+    
+    @Test
+    public void removeAllOwner()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        for(int i=0; i<10; i++)
+            queue.add(new Q(i % 3));
+        assertEquals(4, queue.removeAll(0));
+        assertEquals(6, queue.size());
+        for(Q q: queue.getList())
+            assertNotEquals(0, q.getIdentifier());
+    }
+    
+    @Test
+    public void shuffleKeepsSlots()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        for(int i=0; i<30; i++)
+            queue.add(new Q(i % 3));
+        queue.moveItem(20, 0);
+        long[] owners = new long[queue.size()];
+        for(int i=0; i<owners.length; i++)
+            owners[i] = queue.get(i).getIdentifier();
+        assertEquals(10, queue.count(2));
+        assertEquals(10, queue.shuffle(2));
+        for(int i=0; i<owners.length; i++)
+            assertEquals(owners[i], queue.get(i).getIdentifier());
+    }
+    
+    @Test
+    public void countsFollowRotation()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        for(int i=0; i<12; i++)
+            queue.add(new Q(i % 3));
+        queue.pull();
+        queue.remove(5);
+        queue.addAt(2, new Q(1));
+        assertEquals(2, queue.count(0));
+        assertEquals(5, queue.count(1));
+        assertEquals(4, queue.count(2));
+        assertEquals(5, queue.removeAll(1));
+        assertEquals(0, queue.count(1));
+        queue.skip(3);
+        assertEquals(queue.size(), queue.count(0) + queue.count(2));
+    }
+    
+    @Test
+    public void findAndRemoveByKey()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        for(int i=0; i<9; i++)
+            queue.add(new Q(i % 3, i % 2 == 0 ? "a" : "b"));
+        queue.moveItem(6, 0);
+        assertTrue(queue.contains("a"));
+        assertFalse(queue.contains("c"));
+        assertEquals(5, queue.find("a").size());
+        for(Q q: queue.find("a"))
+            assertTrue(queue.remove(q));
+        assertFalse(queue.contains("a"));
+        assertFalse(queue.remove(new Q(0, "b")));
+        assertEquals(4, queue.size());
+        for(Q q: queue.getList())
+            assertEquals("b", q.getKey());
+    }
+    
+    @Test
+    public void addAfterPlayNext()
+    {
+        FairQueue<Q> queue = new FairQueue<>(null);
+        queue.add(new Q(1));
+        queue.pull();
+        assertEquals(0, queue.add(new Q(1)));
+        assertEquals(1, queue.add(new Q(3)));
+        // playnext fixes the entries up to its position in place
+        queue.addAt(1, new Q(3));
+        // so a new owner joins the rotation after them, not between them
+        assertEquals(3, queue.add(new Q(4)));
+        assertEquals(4, queue.add(new Q(1)));
+        long[] expected = {1, 3, 3, 4, 1};
+        for(int i=0; i<expected.length; i++)
+            assertEquals(expected[i], queue.get(i).getIdentifier());
+        assertEquals(1, queue.pull().getIdentifier());
+        assertEquals(3, queue.pull().getIdentifier());
+        assertEquals(3, queue.add(new Q(4)));
+        assertEquals(3, queue.add(new Q(3)));
+        expected = new long[]{3, 4, 1, 3, 4};
+        for(int i=0; i<expected.length; i++)
+            assertEquals(expected[i], queue.get(i).getIdentifier());
+    }
+    
+    @Test
+    public void batchMatchesAdds()
+    {
+        FairQueue<Q> one = new FairQueue<>(null);
+        FairQueue<Q> batch = new FairQueue<>(null);
+        for(int i=0; i<7; i++)
+        {
+            Q q = new Q(i % 3);
+            one.add(q);
+            batch.add(q);
+        }
+        one.pull();
+        batch.pull();
+        List<Q> items = new ArrayList<>();
+        for(int i=0; i<5; i++)
+            items.add(new Q(1));
+        int first = one.add(items.get(0));
+        for(Q q: items.subList(1, items.size()))
+            one.add(q);
+        assertEquals(first, batch.addAll(items));
+        assertEquals(one.getList(), batch.getList());
+        assertEquals(one.count(1), batch.count(1));
+    }
+    
+    @Test
+    public void convertKeepsCounts()
+    {
+        LinearQueue<Q> linear = new LinearQueue<>(null);
+        linear.add(new Q(1, null, 1000));
+        linear.add(new Q(1, null, 1000));
+        linear.add(new Q(2, null, 1000));
+        linear.addAt(0, new Q(2, null, 1000));
+        linear.add(new Q(3, null, 500));
+        linear.moveItem(4, 1);
+        FairQueue<Q> queue = new FairQueue<>(linear);
+        assertEquals(5, queue.size());
+        assertEquals(2, queue.count(1));
+        assertEquals(2, queue.count(2));
+        assertEquals(1, queue.count(3));
+        assertEquals(2000, queue.getDuration(1));
+        assertEquals(500, queue.getDuration(3));
+        assertEquals(4500, queue.getTotalDuration());
+        for(int i=0; i<linear.size(); i++)
+            assertSame(linear.get(i), queue.get(i));
+        assertEquals(2, queue.removeAll(1));
+        assertEquals(0, queue.count(1));
+        assertEquals(0, queue.getDuration(1));
+        while(queue.pull() != null);
+        assertEquals(0, queue.count(2));
+        assertEquals(0, queue.count(3));
+        assertEquals(0, queue.getTotalDuration());
+    }
+    
     private class Q implements Queueable
     {
         private final long identifier;
+        private final String key;
+        private final long duration;
         
         private Q(long identifier)
+        {
+            this(identifier, null);
+        }
+        
+        private Q(long identifier, String key)
+        {
+            this(identifier, key, 0);
+        }
+        
+        private Q(long identifier, String key, long duration)
         {
             this.identifier = identifier;
+            this.key = key;
+            this.duration = duration;
+        }
+        
+        @Override
+        public String getKey()
+        {
+            return key;
+        }
+        
+        @Override
+        public long getDuration()
+        {
+            return duration;
         }
         
         @Override
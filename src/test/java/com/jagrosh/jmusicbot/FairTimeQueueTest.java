@@ -0,0 +1,139 @@
+package com.jagrosh.jmusicbot;
+
+import com.jagrosh.jmusicbot.queue.FairTimeQueue;
+import com.jagrosh.jmusicbot.queue.LinearQueue;
+import com.jagrosh.jmusicbot.queue.Queueable;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the queue that shares play time, rather than entries, between owners.
+ */
+public class FairTimeQueueTest
+{
+    private static final long MINUTE = 60_000L;
+    
+    @Test
+    public void equalLengthsAlternate()
+    {
+        FairTimeQueue<Q> queue = new FairTimeQueue<>(null);
+        for(int i=0; i<3; i++)
+            queue.add(new Q(1, 3 * MINUTE));
+        for(int i=0; i<3; i++)
+            queue.add(new Q(2, 3 * MINUTE));
+        long[] expected = {1, 2, 1, 2, 1, 2};
+        for(int i=0; i<expected.length; i++)
+            assertEquals(expected[i], queue.get(i).getIdentifier());
+    }
+    
+    @Test
+    public void longEntriesWaitLonger()
+    {
+        FairTimeQueue<Q> queue = new FairTimeQueue<>(null);
+        for(int i=0; i<3; i++)
+            queue.add(new Q(1, 60 * MINUTE));
+        for(int i=0; i<25; i++)
+            queue.add(new Q(2, 3 * MINUTE));
+        // owner 2 gets an hour's worth of songs in before owner 1's second mix
+        assertEquals(1, queue.pull().getIdentifier());
+        for(int i=0; i<20; i++)
+            assertEquals(2, queue.pull().getIdentifier());
+        assertEquals(1, queue.pull().getIdentifier());
+    }
+    
+    @Test
+    public void keepsOrderWhenSwitched()
+    {
+        LinearQueue<Q> linear = new LinearQueue<>(null);
+        for(int i=0; i<10; i++)
+            linear.add(new Q(i % 2 == 0 ? 1 : i, MINUTE));
+        FairTimeQueue<Q> queue = new FairTimeQueue<>(linear);
+        assertEquals(linear.getList(), queue.getList());
+    }
+    
+    @Test
+    public void removeAllFreesTime()
+    {
+        FairTimeQueue<Q> queue = new FairTimeQueue<>(null);
+        for(int i=0; i<5; i++)
+            queue.add(new Q(1, 60 * MINUTE));
+        queue.add(new Q(2, MINUTE));
+        assertEquals(5, queue.removeAll(1));
+        assertEquals(1, queue.add(new Q(1, MINUTE)));
+    }
+    
+    @Test
+    public void countsFollowChanges()
+    {
+        FairTimeQueue<Q> queue = new FairTimeQueue<>(null);
+        for(int i=0; i<4; i++)
+            queue.add(new Q(1, MINUTE));
+        queue.add(new Q(2, 2 * MINUTE));
+        queue.add(new Q(2, Long.MAX_VALUE));
+        assertEquals(4, queue.count(1));
+        assertEquals(4 * MINUTE, queue.getDuration(1));
+        assertEquals(2, queue.count(2));
+        assertEquals(2 * MINUTE, queue.getDuration(2));
+        assertEquals(6 * MINUTE, queue.getTotalDuration());
+        queue.pull();
+        queue.moveItem(0, 4);
+        queue.skip(1);
+        assertEquals(queue.getTotalDuration(), queue.getDuration(1) + queue.getDuration(2));
+        assertEquals(4, queue.count(1) + queue.count(2));
+        queue.removeAll(2);
+        assertEquals(0, queue.count(2));
+        assertEquals(queue.getDuration(1), queue.getTotalDuration());
+        queue.clear();
+        assertEquals(0, queue.getTotalDuration());
+    }
+    
+    @Test
+    public void batchMatchesAdds()
+    {
+        FairTimeQueue<Q> one = new FairTimeQueue<>(null);
+        FairTimeQueue<Q> batch = new FairTimeQueue<>(null);
+        for(int i=0; i<6; i++)
+        {
+            Q q = new Q(i % 3, (i + 1) * MINUTE);
+            one.add(q);
+            batch.add(q);
+        }
+        one.pull();
+        batch.pull();
+        List<Q> items = new ArrayList<>();
+        for(int i=0; i<10; i++)
+            items.add(new Q(1, (i % 4 + 1) * MINUTE));
+        int first = one.add(items.get(0));
+        for(Q q: items.subList(1, items.size()))
+            one.add(q);
+        assertEquals(first, batch.addAll(items));
+        assertEquals(one.getList(), batch.getList());
+        assertEquals(one.count(1), batch.count(1));
+        assertEquals(one.getTotalDuration(), batch.getTotalDuration());
+    }
+    
+    private class Q implements Queueable
+    {
+        private final long identifier, duration;
+        
+        private Q(long identifier, long duration)
+        {
+            this.identifier = identifier;
+            this.duration = duration;
+        }
+        
+        @Override
+        public long getIdentifier()
+        {
+            return identifier;
+        }
+        
+        @Override
+        public long getDuration()
+        {
+            return duration;
+        }
+    }
+}
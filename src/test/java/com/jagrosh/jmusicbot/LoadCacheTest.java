@@ -0,0 +1,53 @@
+package com.jagrosh.jmusicbot;
+
+import com.jagrosh.jmusicbot.audio.LoadCache;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for how the load cache keys the identifiers it is asked to load.
+ */
+public class LoadCacheTest
+{
+    @Test
+    public void searchCaseAndWhitespace()
+    {
+        assertEquals("ytsearch:foo bar", LoadCache.normalize("ytsearch:  Foo   BAR "));
+        assertEquals("ytsearch:foo bar", LoadCache.normalize("YTSearch:foo\tbar"));
+        assertEquals("scsearch:a b", LoadCache.normalize("  SCSEARCH: a \n b"));
+        assertEquals(LoadCache.normalize("ytsearch:Some Song"), LoadCache.normalize("ytsearch: some  song"));
+    }
+
+    @Test
+    public void angleBracketsStripped()
+    {
+        assertEquals("https://example.com/a", LoadCache.normalize("<https://example.com/a>"));
+        assertEquals("https://example.com/a", LoadCache.normalize(" < https://example.com/a > "));
+        assertEquals("ytsearch:foo", LoadCache.normalize("<ytsearch:Foo>"));
+    }
+
+    @Test
+    public void schemeAndHostLowercased()
+    {
+        assertEquals("https://www.youtube.com/watch?v=dQw4w9WgXcQ",
+                LoadCache.normalize("HTTPS://WWW.YouTube.com/watch?v=dQw4w9WgXcQ"));
+        assertEquals("http://example.com:8080/a", LoadCache.normalize("Http://Example.COM:8080/a"));
+    }
+
+    @Test
+    public void pathAndQueryKeepCase()
+    {
+        assertEquals("https://www.youtube.com/Watch?v=AbC", LoadCache.normalize("HTTPS://WWW.YouTube.com/Watch?v=AbC"));
+        assertEquals("https://example.com/Some%20Song.MP3?Key=Value%2F",
+                LoadCache.normalize("https://EXAMPLE.com/Some%20Song.MP3?Key=Value%2F"));
+        assertNotEquals(LoadCache.normalize("https://example.com/A"), LoadCache.normalize("https://example.com/a"));
+    }
+
+    @Test
+    public void otherIdentifiersUnchanged()
+    {
+        assertEquals("/home/Music/Song.mp3", LoadCache.normalize("/home/Music/Song.mp3"));
+        assertEquals("Some  Song", LoadCache.normalize("Some  Song"));
+        assertEquals("not a://valid uri", LoadCache.normalize("not a://valid uri"));
+    }
+}
@@ -0,0 +1,112 @@
+package com.jagrosh.jmusicbot;
+
+import com.jagrosh.jmusicbot.audio.TrackSpill;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the spill file that holds distant queue entries off the heap.
+ */
+public class TrackSpillTest
+{
+    private static final int RECORD = 64 * 1024;
+
+    @Test
+    public void writeAndRead() throws IOException
+    {
+        try(TrackSpill spill = new TrackSpill())
+        {
+            List<TrackSpill.Entry> entries = new ArrayList<>();
+            for(int i=0; i<300; i++)
+                entries.add(spill.write(record(i)));
+            // more than one region, so some records start a new one
+            assertTrue(spill.getMappedSize() > RECORD * 128L);
+            for(int i=0; i<entries.size(); i++)
+                assertArrayEquals(record(i), spill.read(entries.get(i)));
+        }
+    }
+
+    @Test
+    public void rewindInvalidates() throws IOException
+    {
+        try(TrackSpill spill = new TrackSpill())
+        {
+            TrackSpill.Entry old = spill.write(record(1));
+            spill.rewind();
+            assertEquals(0, spill.getPosition());
+            TrackSpill.Entry fresh = spill.write(record(2));
+            assertNull(spill.read(old));
+            assertArrayEquals(record(2), spill.read(fresh));
+        }
+    }
+
+    @Test
+    public void compactKeepsLiveRecords() throws IOException
+    {
+        try(TrackSpill spill = new TrackSpill())
+        {
+            List<TrackSpill.Entry> live = new ArrayList<>();
+            List<TrackSpill.Entry> dead = new ArrayList<>();
+            for(int i=0; !spill.wantsCompaction(); i++)
+                (i % 4 == 0 ? live : dead).add(spill.write(record(i)));
+            long written = spill.getPosition();
+            assertTrue(spill.compact(live));
+            assertEquals(live.size() * (long) RECORD, spill.getPosition());
+            assertTrue(spill.getPosition() < written);
+            for(int i=0; i<live.size(); i++)
+                assertArrayEquals(record(i * 4), spill.read(live.get(i)));
+            for(TrackSpill.Entry entry: dead)
+                assertNull(spill.read(entry));
+        }
+    }
+
+    @Test
+    public void compactSkipsMostlyLiveFile() throws IOException
+    {
+        try(TrackSpill spill = new TrackSpill())
+        {
+            List<TrackSpill.Entry> live = new ArrayList<>();
+            for(int i=0; !spill.wantsCompaction(); i++)
+                live.add(spill.write(record(i)));
+            long written = spill.getPosition();
+            assertFalse(spill.compact(live));
+            assertEquals(written, spill.getPosition());
+            assertFalse(spill.wantsCompaction());
+            assertArrayEquals(record(0), spill.read(live.get(0)));
+        }
+    }
+
+    @Test
+    public void repeatingQueueStaysFlat() throws IOException
+    {
+        try(TrackSpill spill = new TrackSpill())
+        {
+            // a queue of 40 records on repeat: each played record is written again at the end
+            List<TrackSpill.Entry> queue = new ArrayList<>();
+            for(int i=0; i<40; i++)
+                queue.add(spill.write(record(i)));
+            for(int i=40; i<2000; i++)
+            {
+                queue.remove(0);
+                if(spill.wantsCompaction())
+                    spill.compact(queue);
+                queue.add(spill.write(record(i)));
+            }
+            assertTrue(spill.getMappedSize() <= 16L * 1024 * 1024);
+            for(int i=0; i<queue.size(); i++)
+                assertArrayEquals(record(1960 + i), spill.read(queue.get(i)));
+        }
+    }
+
+    private static byte[] record(int i)
+    {
+        byte[] data = new byte[RECORD];
+        Arrays.fill(data, (byte) i);
+        data[0] = (byte) (i >> 8);
+        return data;
+    }
+}
@@ -0,0 +1,202 @@
+package com.jagrosh.jmusicbot.audio;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for the record format of the queue journal.
+ */
+public class QueueJournalTest
+{
+    @Test
+    public void entryRoundTrip() throws IOException
+    {
+        RequestMetadata rm = RequestMetadata.restore(
+                new RequestMetadata.UserInfo(42L, "name", null, "avatar"),
+                new RequestMetadata.RequestInfo("query", "https://example.com/a", 1500L));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeEntry(out, rm, track(1));
+        QueueJournal.writeEntry(out, null, track(2));
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        QueueJournal.Entry first = QueueJournal.readEntry(in);
+        assertArrayEquals(track(1), first.track);
+        assertEquals(42L, first.rm.user.id);
+        assertEquals("name", first.rm.user.username);
+        assertNull(first.rm.user.discrim);
+        assertEquals("avatar", first.rm.user.avatar);
+        assertEquals("query", first.rm.requestInfo.query);
+        assertEquals("https://example.com/a", first.rm.requestInfo.url);
+        assertEquals(1500L, first.rm.requestInfo.startTimestamp);
+
+        QueueJournal.Entry second = QueueJournal.readEntry(in);
+        assertArrayEquals(track(2), second.track);
+        assertNull(second.rm.user);
+        assertNull(second.rm.requestInfo);
+        assertEquals(-1, in.read());
+    }
+
+    @Test
+    public void recordsReplay() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(1, 2, 3));
+        QueueJournal.writeRecord(out, QueueJournal.SHIFTED, 1L, shifted(1, 4, 5));
+        QueueJournal.writeRecord(out, QueueJournal.PLAYING, 1L, playing(77L, 9, 3000L));
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 2L, queue(6));
+        QueueJournal.writeRecord(out, QueueJournal.CLEARED, 2L, new byte[0]);
+
+        Map<Long, QueueJournal.Saved> saved = new HashMap<>();
+        assertTrue(QueueJournal.readRecords(in(bytes.toByteArray()), saved));
+        assertEquals(1, saved.size());
+        QueueJournal.Saved guild = saved.get(1L);
+        assertTracks(guild.queue, 2, 3, 4, 5);
+        assertEquals(77L, guild.channel);
+        assertEquals(3000L, guild.position);
+        assertFalse(guild.paused);
+        assertArrayEquals(track(9), guild.playing.track);
+    }
+
+    @Test
+    public void truncatedTailKeepsEarlierRecords() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(1, 2));
+        int whole = bytes.size();
+        QueueJournal.writeRecord(out, QueueJournal.SHIFTED, 1L, shifted(1, 3));
+        byte[] journal = bytes.toByteArray();
+
+        // a crash can cut the last record anywhere
+        for(int cut = whole + 1; cut < journal.length; cut++)
+        {
+            Map<Long, QueueJournal.Saved> saved = new HashMap<>();
+            assertFalse(QueueJournal.readRecords(in(Arrays.copyOf(journal, cut)), saved));
+            assertTracks(saved.get(1L).queue, 1, 2);
+        }
+    }
+
+    @Test
+    public void damagedRecordStopsReading() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(1, 2));
+        int whole = bytes.size();
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(3));
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(4));
+        byte[] journal = bytes.toByteArray();
+        // flip a byte of the second record's payload, past its type, guild and length
+        journal[whole + 1 + 8 + 4 + 2] ^= 0x40;
+
+        Map<Long, QueueJournal.Saved> saved = new HashMap<>();
+        assertFalse(QueueJournal.readRecords(in(journal), saved));
+        assertTracks(saved.get(1L).queue, 1, 2);
+    }
+
+    @Test
+    public void badLengthStopsReading() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(1));
+        out.writeByte(QueueJournal.QUEUE);
+        out.writeLong(1L);
+        out.writeInt(Integer.MAX_VALUE);
+
+        Map<Long, QueueJournal.Saved> saved = new HashMap<>();
+        assertFalse(QueueJournal.readRecords(in(bytes.toByteArray()), saved));
+        assertTracks(saved.get(1L).queue, 1);
+    }
+
+    @Test
+    public void unknownTypeStopsReading() throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        QueueJournal.writeRecord(out, QueueJournal.QUEUE, 1L, queue(1));
+        QueueJournal.writeRecord(out, (byte) 99, 1L, new byte[0]);
+        QueueJournal.writeRecord(out, QueueJournal.CLEARED, 1L, new byte[0]);
+
+        Map<Long, QueueJournal.Saved> saved = new HashMap<>();
+        assertFalse(QueueJournal.readRecords(in(bytes.toByteArray()), saved));
+        assertTracks(saved.get(1L).queue, 1);
+    }
+
+    @Test
+    public void droppedFromHead()
+    {
+        Object a = new Object(), b = new Object(), c = new Object(), d = new Object();
+        assertEquals(0, QueueJournal.dropped(Arrays.asList(a, b), Arrays.asList(a, b, c)));
+        assertEquals(1, QueueJournal.dropped(Arrays.asList(a, b), Arrays.asList(b, c)));
+        assertEquals(2, QueueJournal.dropped(Arrays.asList(a, b), Arrays.asList()));
+        assertEquals(2, QueueJournal.dropped(Arrays.asList(a, b), Arrays.asList(c)));
+        // anything but the head changed
+        assertEquals(-1, QueueJournal.dropped(Arrays.asList(a, b, c), Arrays.asList(a, c)));
+        assertEquals(-1, QueueJournal.dropped(Arrays.asList(a, b, c), Arrays.asList(b, d, c)));
+        assertEquals(-1, QueueJournal.dropped(Arrays.asList(a, b, c), Arrays.asList(b)));
+    }
+
+    private static DataInputStream in(byte[] journal)
+    {
+        return new DataInputStream(new ByteArrayInputStream(journal));
+    }
+
+    private static void assertTracks(List<QueueJournal.Entry> queue, int... tracks)
+    {
+        assertEquals(tracks.length, queue.size());
+        for(int i = 0; i < tracks.length; i++)
+            assertArrayEquals(track(tracks[i]), queue.get(i).track);
+    }
+
+    private static byte[] queue(int... tracks) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(tracks.length);
+        for(int track: tracks)
+            QueueJournal.writeEntry(data, null, track(track));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] shifted(int dropped, int... added) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeInt(dropped);
+        data.writeInt(added.length);
+        for(int track: added)
+            QueueJournal.writeEntry(data, null, track(track));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] playing(long channel, int track, long position) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream data = new DataOutputStream(bytes);
+        data.writeLong(channel);
+        data.writeBoolean(false);
+        data.writeBoolean(true);
+        data.writeLong(position);
+        QueueJournal.writeEntry(data, null, track(track));
+        return bytes.toByteArray();
+    }
+
+    private static byte[] track(int i)
+    {
+        byte[] data = new byte[16];
+        Arrays.fill(data, (byte) i);
+        return data;
+    }
+}